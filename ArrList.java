@@ -0,0 +1,302 @@
+/*
+ * ArrList.java
+ *
+ * Computer Science E-22
+ */
+
+import java.util.*;
+
+/*
+ * A class that implements our simple List interface using an array.
+ * getItem takes O(1) time, and adding or removing an item shifts the
+ * items after it with a single System.arraycopy.
+ *
+ * By default the list grows as needed: when the array is full, it is
+ * replaced by one twice as large, so adding at the end takes O(1)
+ * amortized time. A list constructed with a maximum size never grows,
+ * and isFull() tells whether it has reached that size.
+ */
+public class ArrList implements List {
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private Object[] items;    // the items, in positions 0 .. length-1
+    private int length;        // # of items in the list
+    private boolean fixed;     // true if the list has a maximum size
+
+    /*
+     * Constructs an ArrList object for a list that is initially empty
+     * and grows as needed.
+     */
+    public ArrList() {
+        items = new Object[DEFAULT_CAPACITY];
+        length = 0;
+        fixed = false;
+    }
+
+    /*
+     * Constructs an ArrList object for a list that is initially empty
+     * and can hold at most maxSize items.
+     */
+    public ArrList(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must be >= 0");
+        }
+        items = new Object[maxSize];
+        length = 0;
+        fixed = true;
+    }
+
+    /*
+     * Constructs an ArrList object containing the items in the specified
+     * array. The list grows as needed.
+     */
+    public ArrList(Object[] initItems) {
+        items = Arrays.copyOf(initItems, Math.max(DEFAULT_CAPACITY, initItems.length));
+        length = initItems.length;
+        fixed = false;
+    }
+
+    /*
+     * length - returns the number of items in the list
+     */
+    public int length() {
+        return length;
+    }
+
+    /*
+     * isFull - returns true if the list has a maximum size and holds
+     * that many items. A list without a maximum size is never full.
+     */
+    public boolean isFull() {
+        return fixed && length == items.length;
+    }
+
+    /*
+     * getItem - returns the item at position i in the list
+     */
+    public Object getItem(int i) {
+        if (i < 0 || i >= length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        return items[i];
+    }
+
+    /*
+     * addItem - adds the specified item at position i in the list,
+     * shifting the items that are currently in positions i, i+1, i+2,
+     * etc. to the right by one. Returns false if the list is full, and
+     * true otherwise.
+     */
+    public boolean addItem(Object item, int i) {
+        if (i < 0 || i > length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == items.length) {
+            if (fixed) {
+                return false;
+            }
+            items = Arrays.copyOf(items, Math.max(DEFAULT_CAPACITY, 2 * items.length));
+        }
+
+        System.arraycopy(items, i, items, i + 1, length - i);
+        items[i] = item;
+        length++;
+        return true;
+    }
+
+    /*
+     * removeItem - removes the item at position i in the list,
+     * shifting the items that are currently in positions i+1, i+2,
+     * etc. to the left by one. Returns a reference to the removed
+     * object.
+     */
+    public Object removeItem(int i) {
+        if (i < 0 || i >= length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        Object removed = items[i];
+        System.arraycopy(items, i + 1, items, i, length - i - 1);
+        length--;
+        items[length] = null;    // so the removed item can be garbage collected
+        return removed;
+    }
+
+    /*
+     * addAll - adds the items in the array at positions i, i+1, i+2,
+     * etc., in order, with one shift of the items after position i.
+     * Returns false, adding none of the items, if a list with a maximum
+     * size doesn't have room for all of them, and true otherwise.
+     */
+    public boolean addAll(int i, Object[] newItems) {
+        if (i < 0 || i > length) {
+            throw new IndexOutOfBoundsException();
+        }
+        int newLength = length + newItems.length;
+        if (newLength > items.length) {
+            if (fixed) {
+                return false;
+            }
+            items = Arrays.copyOf(items, Math.max(newLength, 2 * items.length));
+        }
+
+        System.arraycopy(items, i, items, i + newItems.length, length - i);
+        System.arraycopy(newItems, 0, items, i, newItems.length);
+        length = newLength;
+        return true;
+    }
+
+    /*
+     * removeRange - removes the items in positions from through to-1
+     * with one shift of the items after them
+     */
+    public void removeRange(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        System.arraycopy(items, to, items, from, length - to);
+        int newLength = length - (to - from);
+        Arrays.fill(items, newLength, length, null);
+        length = newLength;
+    }
+
+    /*
+     * toArray - returns an array containing the items in the list, in order
+     */
+    public Object[] toArray() {
+        return Arrays.copyOf(items, length);
+    }
+
+    /*
+     * copyOfRange - returns a new ArrList containing the items in
+     * positions from through to-1
+     */
+    public List copyOfRange(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        return new ArrList(Arrays.copyOfRange(items, from, to));
+    }
+
+    /*
+     * toString - converts the list into a String of the form
+     * {item0, item1, ...}
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder("{");
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                str.append(", ");
+            }
+            str.append(items[i]);
+        }
+        str.append("}");
+        return str.toString();
+    }
+
+    /*
+     * iterator - returns an iterator for this list
+     */
+    public ListIterator iterator() {
+        return new ArrListIterator();
+    }
+
+    /*
+     * private inner class for an iterator over an ArrList
+     */
+    private class ArrListIterator implements ListIterator {
+        private int nextIndex;    // the index of the next item to visit
+
+        public ArrListIterator() {
+            nextIndex = 0;
+        }
+
+        /*
+         * hasNext - does the iterator have additional items to visit?
+         */
+        public boolean hasNext() {
+            return (nextIndex < length);
+        }
+
+        /*
+         * next - returns a reference to the next Object in the iteration
+         */
+        public Object next() {
+            if (nextIndex >= length) {
+                throw new NoSuchElementException();
+            }
+
+            return items[nextIndex++];
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.println("--- Testing ArrList ---");
+        ArrList list = new ArrList();
+        for (int i = 0; i < 25; i++) {
+            list.addItem("i" + i, i);
+        }
+        list.addItem("front", 0);
+        list.addItem("middle", 13);
+        System.out.println("length: " + list.length() + " , Expected : 27, Match? " + (list.length() == 27));
+        System.out.println("getItem(0), getItem(13), getItem(26): " + list.getItem(0) + ", " + list.getItem(13) + ", " + list.getItem(26)
+                           + " , Expected : front, middle, i24, Match? "
+                           + (list.getItem(0).equals("front") && list.getItem(13).equals("middle") && list.getItem(26).equals("i24")));
+        Object removed = list.removeItem(13);
+        System.out.println("removeItem(13): " + removed + " , Expected : middle, Match? " + removed.equals("middle"));
+        System.out.println("getItem(13) after removal: " + list.getItem(13) + " , Expected : i12, Match? " + list.getItem(13).equals("i12"));
+
+        StringBuilder visited = new StringBuilder();
+        ListIterator iter = new ArrList(new Object[] {"a", "b", "c"}).iterator();
+        while (iter.hasNext()) {
+            visited.append(iter.next());
+        }
+        System.out.println("iteration: " + visited + " , Expected : abc, Match? " + visited.toString().equals("abc"));
+
+        System.out.println();
+        System.out.println("--- Testing a fixed-capacity ArrList ---");
+        ArrList small = new ArrList(3);
+        boolean added = small.addItem("x", 0) && small.addItem("y", 1) && small.addItem("z", 2);
+        System.out.println("three adds succeed: " + added + " , isFull: " + small.isFull() + " , Expected : true, true, Match? " + (added && small.isFull()));
+        boolean fourth = small.addItem("w", 0);
+        System.out.println("fourth add: " + fourth + " , list: " + small + " , Expected : false, {x, y, z}, Match? " + (!fourth && small.toString().equals("{x, y, z}")));
+        small.removeItem(0);
+        System.out.println("isFull after a removal: " + small.isFull() + " , Expected : false, Match? " + !small.isFull());
+        try {
+            small.getItem(2);
+            System.out.println("getItem(2) on a list of length 2 , Expected : IndexOutOfBoundsException, Match? false");
+        } catch (IndexOutOfBoundsException e) {
+            System.out.println("getItem(2) on a list of length 2 threw IndexOutOfBoundsException , Expected : IndexOutOfBoundsException, Match? true");
+        }
+
+        System.out.println();
+        System.out.println("--- Indexed access: for (i = 0; i < length(); i++) getItem(i) ---");
+        for (int n = 1000; n <= 100000; n *= 10) {
+            Object[] initItems = new Object[n];
+            for (int i = 0; i < n; i++) {
+                initItems[i] = i;
+            }
+            List[] lists = {new LLList(initItems), new ArrList(initItems)};
+            long[] nanos = new long[lists.length];
+            for (int l = 0; l < lists.length; l++) {
+                long best = Long.MAX_VALUE;
+                long total = 0;
+                for (int round = 0; round < 5; round++) {
+                    long start = System.nanoTime();
+                    for (int i = 0; i < lists[l].length(); i++) {
+                        total += (Integer) lists[l].getItem(i);
+                    }
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                nanos[l] = best / n;
+                if (total < 0) {
+                    System.out.println();    // keeps the loop from being optimized away
+                }
+            }
+            System.out.println(n + " items: LLList " + nanos[0] + " ns/item, ArrList " + nanos[1] + " ns/item");
+        }
+    }
+}
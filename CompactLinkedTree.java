@@ -0,0 +1,717 @@
+/*
+ * CompactLinkedTree.java
+ *
+ * Computer Science E-22
+ */
+
+import java.io.*;
+import java.util.*;
+
+/*
+ * A binary search tree with the same operations as LinkedTree, but with
+ * a different storage engine: instead of a Node object per key (plus an
+ * LLList with a dummy head node and a node per data item), the nodes are
+ * numbered, and the fields of node i are stored at position i of a set
+ * of primitive arrays ("struct of arrays"):
+ *
+ *     keys[i]                    the key
+ *     left[i], right[i], parent[i]  the #s of the children and parent
+ *     dataHead[i]                the first cell in the node's data list
+ *
+ * The data items live in a separate pool: values[c] is the item in
+ * cell c, and nextValue[c] is the # of the next cell in the same list.
+ * NIL (-1) stands for a missing node or cell.
+ *
+ * Slots freed by deletions are kept on free lists (linked through the
+ * left and nextValue arrays) and reused before the arrays grow. The
+ * arrays grow by doubling, so the tree costs about 20 bytes per key
+ * plus 8 per data item, with no per-node object for the GC to mark.
+ *
+ * One difference in behavior: since a node's data items are cells in
+ * the pool rather than an LLList, search and delete return a new LLList
+ * holding the items. Changing that list does not change the tree.
+ */
+public class CompactLinkedTree {
+    private static final int NIL = -1;
+    
+    // the node arrays
+    private int[] keys;
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    private int[] dataHead;
+    private int nodeCount;     // # of node slots ever used
+    private int freeNode;      // first free node slot, or NIL
+    
+    // the data-item pool
+    private Object[] values;
+    private int[] nextValue;
+    private int valueCount;    // # of cells ever used
+    private int freeValue;     // first free cell, or NIL
+    
+    private int root;
+    private int size;          // # of keys in the tree
+    
+    public CompactLinkedTree() {
+        this(16);
+    }
+    
+    /*
+     * Constructs an empty tree with room for the specified # of keys
+     * (and as many data items) before the arrays have to grow.
+     */
+    public CompactLinkedTree(int capacity) {
+        capacity = Math.max(capacity, 1);
+        keys = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        parent = new int[capacity];
+        dataHead = new int[capacity];
+        values = new Object[capacity];
+        nextValue = new int[capacity];
+        
+        freeNode = NIL;
+        freeValue = NIL;
+        root = NIL;
+    }
+    
+    /*
+     * Constructs a tree containing the specified (key, data) pairs, in
+     * the same way as the LinkedTree constructor: the arrays are sorted
+     * (if they aren't already), the data items of equal keys are grouped
+     * into one node's list with the last of them first, and the nodes
+     * are linked directly from the sorted keys into a balanced tree.
+     */
+    public CompactLinkedTree(int[] keys, Object[] dataItems) {
+        this(keys.length);
+        if (keys.length != dataItems.length) {
+            System.out.println("Cannot create the CompactLinkedTree. Mismatch between keys and data arrays lengths");
+            return;
+        }
+        
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i - 1] > keys[i]) {
+                SortHelper.quickSort(keys, dataItems);
+                break;
+            }
+        }
+        
+        // Give each distinct key a node, in ascending order, so that
+        // node i holds the i-th smallest key.
+        for (int i = 0; i < keys.length; i++) {
+            if (i == 0 || keys[i - 1] != keys[i]) {
+                newNode(keys[i], NIL);
+            }
+            addValue(nodeCount - 1, dataItems[i]);
+        }
+        size = nodeCount;
+        root = buildBal(0, nodeCount - 1, NIL);
+    }
+    
+    /*
+     * buildBal - links nodes first through last into a balanced subtree
+     * whose root is the middle one, and returns the # of that root
+     */
+    private int buildBal(int first, int last, int parentNode) {
+        if (first > last) {
+            return NIL;
+        }
+        
+        int split = (first + last) / 2;
+        parent[split] = parentNode;
+        left[split] = buildBal(first, split - 1, split);
+        right[split] = buildBal(split + 1, last, split);
+        return split;
+    }
+    
+    /*
+     * newNode - returns the # of a node slot for the specified key,
+     * reusing a freed slot if there is one
+     */
+    private int newNode(int key, int parentNode) {
+        int n;
+        if (freeNode != NIL) {
+            n = freeNode;
+            freeNode = left[n];
+        } else {
+            if (nodeCount == keys.length) {
+                int capacity = 2 * keys.length;
+                keys = Arrays.copyOf(keys, capacity);
+                left = Arrays.copyOf(left, capacity);
+                right = Arrays.copyOf(right, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                dataHead = Arrays.copyOf(dataHead, capacity);
+            }
+            n = nodeCount++;
+        }
+        
+        keys[n] = key;
+        left[n] = NIL;
+        right[n] = NIL;
+        parent[n] = parentNode;
+        dataHead[n] = NIL;
+        return n;
+    }
+    
+    /* releaseNode - puts node slot n on the free list */
+    private void releaseNode(int n) {
+        left[n] = freeNode;
+        freeNode = n;
+    }
+    
+    /*
+     * addValue - adds the item to the front of the data list of node n
+     */
+    private void addValue(int n, Object item) {
+        int c;
+        if (freeValue != NIL) {
+            c = freeValue;
+            freeValue = nextValue[c];
+        } else {
+            if (valueCount == values.length) {
+                int capacity = 2 * values.length;
+                values = Arrays.copyOf(values, capacity);
+                nextValue = Arrays.copyOf(nextValue, capacity);
+            }
+            c = valueCount++;
+        }
+        
+        values[c] = item;
+        nextValue[c] = dataHead[n];
+        dataHead[n] = c;
+    }
+    
+    /*
+     * removeValues - puts the cells of the data list starting at cell
+     * c on the free list, and returns the items in a new LLList
+     */
+    private LLList removeValues(int c) {
+        LLList list = toLLList(c);
+        while (c != NIL) {
+            int next = nextValue[c];
+            values[c] = null;
+            nextValue[c] = freeValue;
+            freeValue = c;
+            c = next;
+        }
+        return list;
+    }
+    
+    /*
+     * toLLList - returns a new LLList containing the items in the data
+     * list starting at cell c
+     */
+    private LLList toLLList(int c) {
+        int count = 0;
+        for (int trav = c; trav != NIL; trav = nextValue[trav]) {
+            count++;
+        }
+        Object[] items = new Object[count];
+        for (int i = 0; c != NIL; c = nextValue[c]) {
+            items[i++] = values[c];
+        }
+        return new LLList(items);
+    }
+    
+    /* size - returns the # of keys in the tree */
+    public int size() {
+        return size;
+    }
+    
+    /*
+     * findNode - returns the # of the node with the specified key,
+     * or NIL if there is none
+     */
+    private int findNode(int key) {
+        int trav = root;
+        while (trav != NIL && keys[trav] != key) {
+            trav = (key < keys[trav]) ? left[trav] : right[trav];
+        }
+        return trav;
+    }
+    
+    /*
+     * search - returns a new list containing the data items associated
+     * with the key, or null if the key is not in the tree. (Unlike
+     * LinkedTree.search, the list is a copy, since the items are stored
+     * in the pool rather than in an LLList.)
+     */
+    public LLList search(int key) {
+        int n = findNode(key);
+        return (n == NIL) ? null : toLLList(dataHead[n]);
+    }
+    
+    /*
+     * insert - inserts the specified (key, data) pair in the tree so
+     * that the tree remains a binary search tree
+     */
+    public void insert(int key, Object data) {
+        int parentNode = NIL;
+        int trav = root;
+        while (trav != NIL) {
+            if (keys[trav] == key) {
+                addValue(trav, data);
+                return;
+            }
+            parentNode = trav;
+            trav = (key < keys[trav]) ? left[trav] : right[trav];
+        }
+        
+        int n = newNode(key, parentNode);
+        addValue(n, data);
+        if (parentNode == NIL) {
+            root = n;
+        } else if (key < keys[parentNode]) {
+            left[parentNode] = n;
+        } else {
+            right[parentNode] = n;
+        }
+        size++;
+    }
+    
+    /*
+     * FOR TESTING: inserts the keys in the specified array, with data
+     * based on each key
+     */
+    public void insertKeys(int[] keys) {
+        for (int i = 0; i < keys.length; i++) {
+            insert(keys[i], "data for key " + keys[i]);
+        }
+    }
+    
+    /*
+     * delete - deletes the node with the specified key and returns its
+     * data items, or null if the key is not in the tree
+     */
+    public LLList delete(int key) {
+        int n = findNode(key);
+        if (n == NIL) {
+            return null;
+        }
+        
+        LLList removed = removeValues(dataHead[n]);
+        deleteNode(n);
+        return removed;
+    }
+    
+    /*
+     * deleteNode - unlinks node n from the tree, after its data list
+     * has been dealt with
+     */
+    private void deleteNode(int n) {
+        if (left[n] != NIL && right[n] != NIL) {
+            // Replace n's key and data with those of its inorder
+            // successor, which has no left child, and unlink that instead.
+            int replace = right[n];
+            while (left[replace] != NIL) {
+                replace = left[replace];
+            }
+            keys[n] = keys[replace];
+            dataHead[n] = dataHead[replace];
+            n = replace;
+        }
+        
+        int child = (left[n] != NIL) ? left[n] : right[n];
+        int p = parent[n];
+        if (p == NIL) {
+            root = child;
+        } else if (left[p] == n) {
+            left[p] = child;
+        } else {
+            right[p] = child;
+        }
+        if (child != NIL) {
+            parent[child] = p;
+        }
+        
+        releaseNode(n);
+        size--;
+    }
+    
+    /*
+     * deleteMax - removes the node with the largest key and returns
+     * that key, or -1 if the tree is empty
+     */
+    public int deleteMax() {
+        if (root == NIL) {
+            return -1;
+        }
+        
+        int trav = root;
+        while (right[trav] != NIL) {
+            trav = right[trav];
+        }
+        int max = keys[trav];
+        removeValues(dataHead[trav]);
+        deleteNode(trav);
+        return max;
+    }
+    
+    /*
+     * depth - returns the depth of the node with the specified key,
+     * or -1 if the key is not in the tree
+     */
+    public int depth(int key) {
+        int depth = 0;
+        int trav = root;
+        while (trav != NIL) {
+            if (keys[trav] == key) {
+                return depth;
+            }
+            trav = (key < keys[trav]) ? left[trav] : right[trav];
+            depth++;
+        }
+        return -1;
+    }
+    
+    /*
+     * sumEvens - returns the sum of the even keys in the tree. Every
+     * slot below nodeCount that isn't on the free list holds a key, so
+     * this only has to find the free slots, not walk the tree.
+     */
+    public long sumEvens() {
+        boolean[] free = new boolean[nodeCount];
+        for (int n = freeNode; n != NIL; n = left[n]) {
+            free[n] = true;
+        }
+        
+        long sum = 0;
+        for (int n = 0; n < nodeCount; n++) {
+            if (!free[n] && keys[n] % 2 == 0) {
+                sum += keys[n];
+            }
+        }
+        return sum;
+    }
+    
+    /*
+     * depthIter - returns the same result as depth, which already walks
+     * down the tree with a loop rather than recursion
+     */
+    public int depthIter(int key) {
+        return depth(key);
+    }
+    
+    /*
+     * preorderPrint - prints the keys in the order given by a preorder
+     * traversal. Like the other print methods, it walks the parent links
+     * rather than recursing, so a degenerate tree can't overflow the stack.
+     */
+    public void preorderPrint() {
+        printKeys(preorderIterator());
+    }
+    
+    /* inorderPrint - prints the keys in the order given by an inorder traversal */
+    public void inorderPrint() {
+        printKeys(inorderIterator());
+    }
+    
+    /* printKeys - prints the keys returned by iter on one line */
+    private static void printKeys(LinkedTreeIterator iter) {
+        StringBuilder line = new StringBuilder();
+        while (iter.hasNext()) {
+            line.append(iter.next()).append(' ');
+        }
+        System.out.println(line);
+    }
+    
+    /* postorderPrint - prints the keys in the order given by a postorder traversal */
+    public void postorderPrint() {
+        StringBuilder line = new StringBuilder();
+        int trav = root;
+        int prev = NIL;
+        while (trav != NIL) {
+            if (prev == parent[trav]) {
+                // We've just come down to trav: go to its first child.
+                prev = trav;
+                if (left[trav] != NIL) {
+                    trav = left[trav];
+                } else if (right[trav] != NIL) {
+                    trav = right[trav];
+                } else {
+                    line.append(keys[trav]).append(' ');
+                    trav = parent[trav];
+                }
+            } else if (prev == left[trav] && right[trav] != NIL) {
+                // We've come back up from the left subtree.
+                prev = trav;
+                trav = right[trav];
+            } else {
+                // Both subtrees are done.
+                line.append(keys[trav]).append(' ');
+                prev = trav;
+                trav = parent[trav];
+            }
+        }
+        System.out.println(line);
+    }
+    
+    /*
+     * levelOrderPrint - prints the keys in level order, one level per
+     * line, as LinkedTree.levelOrderPrint does. Every node enters the
+     * queue once, so the queue is a single array of size() node #s.
+     */
+    public void levelOrderPrint() {
+        if (root == NIL) {
+            System.out.println();
+            return;
+        }
+        
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+        StringBuilder line = new StringBuilder();
+        while (head < tail) {
+            int levelEnd = tail;
+            while (head < levelEnd) {
+                int n = queue[head++];
+                line.append(keys[n]).append(' ');
+                if (left[n] != NIL) {
+                    queue[tail++] = left[n];
+                }
+                if (right[n] != NIL) {
+                    queue[tail++] = right[n];
+                }
+            }
+            System.out.println(line);
+            line.setLength(0);
+        }
+    }
+    
+    /* preorderIterator - returns a preorder iterator for this tree */
+    public LinkedTreeIterator preorderIterator() {
+        return new PreorderIterator();
+    }
+    
+    /*
+     * inner class for a preorder iterator, which walks the parent
+     * links in the same way as LinkedTree's
+     */
+    private class PreorderIterator implements LinkedTreeIterator {
+        private int nextNode;
+        
+        private PreorderIterator() {
+            nextNode = root;
+        }
+        
+        public boolean hasNext() {
+            return nextNode != NIL;
+        }
+        
+        public int next() {
+            if (nextNode == NIL) {
+                throw new NoSuchElementException();
+            }
+            
+            int key = keys[nextNode];
+            if (left[nextNode] != NIL) {
+                nextNode = left[nextNode];
+            } else if (right[nextNode] != NIL) {
+                nextNode = right[nextNode];
+            } else {
+                // Go back up the tree until we find a node with a
+                // right child that we haven't seen yet.
+                int p = parent[nextNode];
+                int child = nextNode;
+                while (p != NIL && (right[p] == child || right[p] == NIL)) {
+                    child = p;
+                    p = parent[p];
+                }
+                nextNode = (p == NIL) ? NIL : right[p];
+            }
+            return key;
+        }
+    }
+    
+    /* inorderIterator - returns an inorder iterator for this tree */
+    public LinkedTreeIterator inorderIterator() {
+        return new InorderIterator();
+    }
+    
+    /* inner class for an inorder iterator */
+    private class InorderIterator implements LinkedTreeIterator {
+        private int nextNode;
+        
+        private InorderIterator() {
+            nextNode = root;
+            while (nextNode != NIL && left[nextNode] != NIL) {
+                nextNode = left[nextNode];
+            }
+        }
+        
+        public boolean hasNext() {
+            return nextNode != NIL;
+        }
+        
+        public int next() {
+            if (nextNode == NIL) {
+                throw new NoSuchElementException();
+            }
+            
+            int key = keys[nextNode];
+            if (right[nextNode] != NIL) {
+                nextNode = right[nextNode];
+                while (left[nextNode] != NIL) {
+                    nextNode = left[nextNode];
+                }
+            } else {
+                int p = parent[nextNode];
+                int child = nextNode;
+                while (p != NIL && right[p] == child) {
+                    child = p;
+                    p = parent[p];
+                }
+                nextNode = p;
+            }
+            return key;
+        }
+    }
+    
+    /*
+     * footprint - returns the # of bytes taken up by the tree's arrays,
+     * including the slots that are not in use yet (assuming 4-byte
+     * references and 16-byte array headers). The data items themselves
+     * are not counted.
+     */
+    public long footprint() {
+        long bytes = 5L * (16 + 4L * keys.length);
+        bytes += 16 + 4L * values.length;
+        bytes += 16 + 4L * nextValue.length;
+        return bytes;
+    }
+    
+    /*
+     * usedHeap - returns the # of bytes in use on the heap after asking
+     * for a garbage collection (an estimate, but a good one for big
+     * differences)
+     */
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+    
+    /* printed - returns what the specified print method prints */
+    private static String printed(Runnable print) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true));
+        try {
+            print.run();
+        } finally {
+            System.setOut(out);
+        }
+        return bytes.toString();
+    }
+    
+    /*
+     * Tests the operations against a LinkedTree, and then compares the
+     * heap used by the two storage engines for the same keys. The
+     * optional argument is the # of keys (default 2,000,000).
+     */
+    public static void main(String[] args) {
+        System.out.println("--- Testing against LinkedTree ---");
+        System.out.println();
+        CompactLinkedTree tree = new CompactLinkedTree();
+        LinkedTree reference = new LinkedTree();
+        int[] keys = {37, 26, 42, 13, 35, 56, 30, 47, 70, 26};
+        tree.insertKeys(keys);
+        reference.insertKeys(keys);
+        
+        tree.delete(37);
+        reference.delete(37);
+        tree.deleteMax();
+        reference.deleteMax();
+        tree.insert(36, "data for key 36");
+        reference.insert(36, "data for key 36");
+        
+        String results = "";
+        String expected = "";
+        LinkedTreeIterator iter = tree.preorderIterator();
+        LinkedTreeIterator refIter = reference.preorderIterator();
+        while (iter.hasNext()) {
+            results = results + iter.next() + " ";
+        }
+        while (refIter.hasNext()) {
+            expected = expected + refIter.next() + " ";
+        }
+        System.out.println("preorder: " + results);
+        System.out.println("MATCHES LinkedTree?: " + results.equals(expected));
+        
+        results = "";
+        iter = tree.inorderIterator();
+        while (iter.hasNext()) {
+            results = results + iter.next() + " ";
+        }
+        System.out.println("inorder: " + results);
+        System.out.println("MATCHES EXPECTED RESULTS?: " + results.equals("13 26 30 35 36 42 47 56 "));
+        System.out.println("depth of 47: " + tree.depth(47) + " , Expected : " + reference.depth(47) + ", Match? " + (tree.depth(47) == reference.depth(47)));
+        System.out.println("sumEvens: " + tree.sumEvens() + " , Expected : " + reference.sumEvens() + ", Match? " + (tree.sumEvens() == reference.sumEvens()));
+        System.out.println("data for 26: " + tree.search(26) + " , Expected : " + reference.search(26));
+        System.out.println("size: " + tree.size() + " , Expected : " + reference.size() + ", Match? " + (tree.size() == reference.size()));
+        System.out.println("depthIter of 13: " + tree.depthIter(13) + " , Expected : " + reference.depthIter(13) + ", Match? " + (tree.depthIter(13) == reference.depthIter(13)));
+        
+        System.out.println();
+        System.out.println("--- Bulk constructor and print methods against LinkedTree ---");
+        System.out.println();
+        int[] bulkKeys = {8, 3, 12, 3, 1, 20, 8, 15, 3, 5};
+        Object[] bulkData = new Object[bulkKeys.length];
+        for (int i = 0; i < bulkKeys.length; i++) {
+            bulkData[i] = "item " + i;
+        }
+        CompactLinkedTree bulk = new CompactLinkedTree(bulkKeys.clone(), bulkData.clone());
+        LinkedTree bulkReference = new LinkedTree(bulkKeys.clone(), bulkData.clone());
+        String[] names = {"preorder", "inorder", "postorder", "level order"};
+        Runnable[] compactPrints = {bulk::preorderPrint, bulk::inorderPrint, bulk::postorderPrint, bulk::levelOrderPrint};
+        Runnable[] referencePrints = {bulkReference::preorderPrint, bulkReference::inorderPrint, bulkReference::postorderPrint, bulkReference::levelOrderPrint};
+        for (int i = 0; i < names.length; i++) {
+            String printed = printed(compactPrints[i]);
+            String expectedPrint = printed(referencePrints[i]);
+            System.out.print(names[i] + ":\n" + printed);
+            System.out.println("MATCHES LinkedTree?: " + printed.equals(expectedPrint));
+        }
+        System.out.println("data for 3: " + bulk.search(3) + " , Expected : " + bulkReference.search(3) + ", Match? " + bulk.search(3).toString().equals(bulkReference.search(3).toString()));
+        System.out.println("size: " + bulk.size() + " , Expected : " + bulkReference.size() + ", Match? " + (bulk.size() == bulkReference.size()));
+        bulk.insert(4, "data for key 4");
+        bulk.delete(8);
+        System.out.print("inorder after insert(4) and delete(8): ");
+        bulk.inorderPrint();
+        System.out.print("empty tree, level order: ");
+        new CompactLinkedTree(new int[0], new Object[0]).levelOrderPrint();
+        
+        LLList copy = tree.search(26);
+        copy.addItem("not in the tree", 0);
+        System.out.println("search returns a copy: " + tree.search(26) + " , Expected : " + reference.search(26) + ", Match? " + (tree.search(26).length() == 2));
+        
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+        System.out.println();
+        System.out.println("--- Memory footprint: " + n + " random keys, one shared data item each ---");
+        System.out.println();
+        Random rand = new Random(10);
+        int[] randomKeys = new int[n];
+        for (int i = 0; i < n; i++) {
+            randomKeys[i] = rand.nextInt();
+        }
+        String item = "data";
+        
+        long before = usedHeap();
+        LinkedTree linked = new LinkedTree();
+        for (int i = 0; i < n; i++) {
+            linked.insert(randomKeys[i], item);
+        }
+        long linkedBytes = usedHeap() - before;
+        System.out.println("LinkedTree:        " + (linkedBytes / n) + " bytes/key (" + (linkedBytes >> 20) + " MB)");
+        linked = null;
+        
+        before = usedHeap();
+        CompactLinkedTree compact = new CompactLinkedTree(n);
+        for (int i = 0; i < n; i++) {
+            compact.insert(randomKeys[i], item);
+        }
+        long compactBytes = usedHeap() - before;
+        System.out.println("CompactLinkedTree: " + (compactBytes / n) + " bytes/key (" + (compactBytes >> 20) + " MB), footprint() says " + (compact.footprint() >> 20) + " MB");
+    }
+}
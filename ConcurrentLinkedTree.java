@@ -0,0 +1,419 @@
+/*
+ * ConcurrentLinkedTree.java
+ *
+ * Computer Science E-22
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/*
+ * A thread-safe wrapper around a balanced LinkedTree, for lookups that
+ * are spread across many threads.
+ *
+ * Updates (insert, delete, deleteMax) take the write lock of a
+ * StampedLock, so they are linearizable. search first runs as an
+ * optimistic read, which takes no lock at all and is retried under the
+ * read lock only if a writer got in the way. The other queries take the
+ * read lock, which readers can hold at the same time, so readers never
+ * block each other -- only writers.
+ *
+ * search and searchAll return copies of the tree's lists of data
+ * items, made while the read is known to be consistent. The tree's own
+ * lists are changed in place when a key is inserted again, so handing
+ * them out would let a caller read one while a writer resizes it.
+ */
+public class ConcurrentLinkedTree {
+    private LinkedTree tree;
+    private StampedLock lock;
+    
+    /*
+     * Constructs an empty tree, which is kept AVL-balanced.
+     */
+    public ConcurrentLinkedTree() {
+        tree = new LinkedTree(true);
+        lock = new StampedLock();
+    }
+    
+    /*
+     * search - returns a copy of the list of data items associated with
+     * the key, or null if the key is not in the tree.
+     */
+    public List search(int key) {
+        // The optimistic read records nothing in the tree's metrics, so it
+        // is only used while they are off; if setMetrics races with it,
+        // validate fails and the search is done (and recorded) below.
+        // The list is copied before validating, so that a valid stamp
+        // also covers the copy.
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0 && !tree.metricsEnabled()) {
+            List data = copyOf(tree.searchWithoutMetrics(key));
+            if (lock.validate(stamp)) {
+                return data;
+            }
+        }
+        
+        // A writer was active, or the metrics are on; search again while
+        // holding the read lock.
+        stamp = lock.readLock();
+        try {
+            return copyOf(tree.search(key));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /*
+     * copyOf - returns a copy of one of the tree's lists of data items
+     * (which are all ValueBags), or null if data is null
+     */
+    private static List copyOf(List data) {
+        return (data == null) ? null : ((ValueBag) data).copy();
+    }
+    
+    /*
+     * searchAll - returns copies of the lists of data items associated
+     * with each of the keys, in the same order as the keys (see
+     * LinkedTree.searchAll). A batch holds the read lock for its whole
+     * traversal and while the lists are copied.
+     */
+    public List[] searchAll(int[] keys) {
+        long stamp = lock.readLock();
+        try {
+            List[] results = tree.searchAll(keys);
+            for (int i = 0; i < results.length; i++) {
+                results[i] = copyOf(results[i]);
+            }
+            return results;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /*
+     * depth - returns the depth of the node with the specified key,
+     * or -1 if the key is not in the tree.
+     */
+    public int depth(int key) {
+        long stamp = lock.readLock();
+        try {
+            return tree.depth(key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /* size - returns the # of keys in the tree */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return tree.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /* height - returns the height of the tree */
+    public int height() {
+        long stamp = lock.readLock();
+        try {
+            return tree.height();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /* setMetrics - turns the tree's metrics on or off */
+    public void setMetrics(boolean on) {
+        long stamp = lock.writeLock();
+        try {
+            tree.setMetrics(on);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /*
+     * metrics - returns a snapshot of the tree's metrics, or null if
+     * they are off
+     */
+    public LinkedTreeMetrics.Snapshot metrics() {
+        long stamp = lock.readLock();
+        try {
+            return tree.metrics();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /*
+     * isValid - checks the BST order, parent references, sizes and
+     * balance of the tree (see LinkedTree.isValid).
+     */
+    public boolean isValid() {
+        long stamp = lock.readLock();
+        try {
+            return tree.isValid();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /*
+     * insert - adds the specified (key, data) pair to the tree
+     */
+    public void insert(int key, Object data) {
+        long stamp = lock.writeLock();
+        try {
+            tree.insert(key, data);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /*
+     * delete - removes the node with the specified key and returns its
+     * list of data items, or null if the key is not in the tree.
+     */
+    public List delete(int key) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.delete(key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /*
+     * deleteMax - removes the node with the largest key and returns
+     * that key, or -1 if the tree is empty.
+     */
+    public int deleteMax() {
+        long stamp = lock.writeLock();
+        try {
+            return tree.deleteMax();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /*
+     * inorderIterator - returns an iterator over the keys that were in
+     * the tree when it was called, in ascending order. The keys are
+     * copied under the read lock, so the iteration itself holds no
+     * lock and is not affected by later updates.
+     */
+    public LinkedTreeIterator inorderIterator() {
+        int[] keys;
+        long stamp = lock.readLock();
+        try {
+            keys = new int[tree.size()];
+            LinkedTreeIterator iter = tree.inorderIterator();
+            for (int i = 0; iter.hasNext(); i++) {
+                keys[i] = iter.next();
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return new ArrayIterator(keys);
+    }
+    
+    /*
+     * private inner class for an iterator over a copy of the keys
+     */
+    private static class ArrayIterator implements LinkedTreeIterator {
+        private int[] keys;
+        private int next;
+        
+        private ArrayIterator(int[] keys) {
+            this.keys = keys;
+            this.next = 0;
+        }
+        
+        public boolean hasNext() {
+            return next < keys.length;
+        }
+        
+        public int next() {
+            if (next >= keys.length) {
+                throw new NoSuchElementException();
+            }
+            return keys[next++];
+        }
+    }
+    
+    /*
+     * Stress test: several threads run a mix of searches, inserts and
+     * deletes at the same time. Each thread inserts and deletes only the
+     * keys in its own stripe (key % THREADS == thread #), and remembers
+     * which of them should be present, so that the final contents can
+     * be checked; searches go to any key.
+     */
+    public static void main(String[] args) throws Exception {
+        final int threads = 8;
+        final int opsPerThread = (args.length > 0) ? Integer.parseInt(args[0]) : 500000;
+        final int keyRange = 100000;
+        final ConcurrentLinkedTree tree = new ConcurrentLinkedTree();
+        final boolean[][] present = new boolean[threads][keyRange];
+        final AtomicLong hits = new AtomicLong();
+        final AtomicInteger badData = new AtomicInteger();
+        
+        System.out.println("--- Stress test: " + threads + " threads x " + opsPerThread + " mixed operations ---");
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        java.util.List<Future<?>> futures = new ArrayList<Future<?>>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            futures.add(pool.submit(new Runnable() {
+                public void run() {
+                    Random rand = new Random(id);
+                    for (int i = 0; i < opsPerThread; i++) {
+                        int op = rand.nextInt(10);
+                        if (op < 7) {
+                            int key = rand.nextInt(keyRange);
+                            List data = tree.search(key);
+                            if (data != null) {
+                                hits.incrementAndGet();
+                                if (!("data for key " + key).equals(data.getItem(0))) {
+                                    badData.incrementAndGet();
+                                }
+                            }
+                        } else {
+                            int key = rand.nextInt(keyRange / threads) * threads + id;
+                            if (op < 9 && !present[id][key]) {
+                                tree.insert(key, "data for key " + key);
+                                present[id][key] = true;
+                            } else if (op == 9 && present[id][key]) {
+                                tree.delete(key);
+                                present[id][key] = false;
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        pool.shutdown();
+        long millis = (System.nanoTime() - start) / 1000000;
+        
+        int expectedSize = 0;
+        boolean contentsMatch = true;
+        for (int key = 0; key < keyRange; key++) {
+            boolean expected = present[key % threads][key];
+            if (expected) {
+                expectedSize++;
+            }
+            if (expected != (tree.search(key) != null)) {
+                contentsMatch = false;
+            }
+        }
+        
+        System.out.println("time: " + millis + " ms, search hits: " + hits.get());
+        System.out.println("tree is a valid BST with correct parent links? " + tree.isValid());
+        System.out.println("size: " + tree.size() + " , Expected : " + expectedSize + ", Match? " + (tree.size() == expectedSize));
+        System.out.println("contents match what each thread inserted? " + contentsMatch);
+        System.out.println("searches that saw the wrong data: " + badData.get() + " , Expected : 0, Match? " + (badData.get() == 0));
+        System.out.println("height: " + tree.height());
+        
+        System.out.println();
+        System.out.println("--- One key: a writer keeps adding data items while " + (threads - 1) + " threads read them ---");
+        final int hotKey = -1;
+        final int additions = 200000;
+        final AtomicInteger readErrors = new AtomicInteger();
+        tree.insert(hotKey, 0);
+        ExecutorService hotPool = Executors.newFixedThreadPool(threads);
+        futures.clear();
+        final Future<?> writer = hotPool.submit(new Runnable() {
+            public void run() {
+                for (int i = 1; i <= additions; i++) {
+                    tree.insert(hotKey, i);
+                }
+            }
+        });
+        for (int t = 1; t < threads; t++) {
+            futures.add(hotPool.submit(new Runnable() {
+                public void run() {
+                    while (!writer.isDone()) {
+                        // The items were added as 0, 1, 2, ..., so the list
+                        // holds n, n-1, ..., 0 for some n.
+                        try {
+                            List data = tree.search(hotKey);
+                            int expected = data.length() - 1;
+                            ListIterator iter = data.iterator();
+                            while (iter.hasNext()) {
+                                if (!iter.next().equals(expected)) {
+                                    readErrors.incrementAndGet();
+                                }
+                                expected--;
+                            }
+                            if (expected != -1) {
+                                readErrors.incrementAndGet();
+                            }
+                        } catch (RuntimeException e) {
+                            readErrors.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+        writer.get();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        hotPool.shutdown();
+        int hotLength = tree.search(hotKey).length();
+        System.out.println("reads that saw torn data or threw: " + readErrors.get() + " , Expected : 0, Match? " + (readErrors.get() == 0));
+        System.out.println("data items for the key: " + hotLength + " , Expected : " + (additions + 1) + ", Match? " + (hotLength == additions + 1));
+        tree.delete(hotKey);
+        
+        System.out.println();
+        System.out.println("--- Metrics: " + threads + " threads searching and inserting while snapshots are taken ---");
+        final int searchesPerThread = 20000;
+        tree.setMetrics(true);
+        ExecutorService metricsPool = Executors.newFixedThreadPool(threads + 1);
+        futures.clear();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            futures.add(metricsPool.submit(new Runnable() {
+                public void run() {
+                    Random rand = new Random(100 + id);
+                    for (int i = 0; i < searchesPerThread; i++) {
+                        tree.search(rand.nextInt(keyRange));
+                        if (i % 10 == 0) {
+                            tree.insert(keyRange + id * searchesPerThread + i, null);
+                        }
+                    }
+                }
+            }));
+        }
+        Future<Integer> snapshots = metricsPool.submit(new Callable<Integer>() {
+            public Integer call() {
+                int taken = 0;
+                for (int i = 0; i < 20; i++) {
+                    if (tree.metrics() != null) {
+                        taken++;
+                    }
+                }
+                return taken;
+            }
+        });
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        int taken = snapshots.get();
+        metricsPool.shutdown();
+        LinkedTreeMetrics.Snapshot snapshot = tree.metrics();
+        long searches = snapshot.count(LinkedTreeMetrics.SEARCH);
+        long inserts = snapshot.count(LinkedTreeMetrics.INSERT);
+        System.out.println("snapshots taken during the run: " + taken + " , Expected : 20, Match? " + (taken == 20));
+        System.out.println("searches recorded: " + searches + " , Expected : " + threads * searchesPerThread
+                           + ", Match? " + (searches == threads * searchesPerThread));
+        System.out.println("inserts recorded: " + inserts + " , Expected : " + threads * searchesPerThread / 10
+                           + ", Match? " + (inserts == threads * searchesPerThread / 10));
+        System.out.println("tree still valid? " + tree.isValid());
+    }
+}
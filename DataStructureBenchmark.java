@@ -0,0 +1,412 @@
+/*
+ * DataStructureBenchmark.java
+ *
+ * Computer Science E-22
+ */
+
+import java.util.*;
+import java.util.function.*;
+
+/*
+ * A benchmark harness for LinkedTree, the List implementations, LLQueue
+ * and SortHelper, with the java.util classes that do the same jobs
+ * (TreeMap, ArrayList, ArrayDeque and Arrays.sort) measured alongside
+ * as baselines.
+ *
+ * Each measurement runs a few warmup rounds, so that the JIT compiler
+ * has compiled the code being measured, followed by several measured
+ * rounds, and reports the median time per operation. Any state that
+ * a round needs (a tree to search, an array to sort) is built before
+ * the round starts and is not timed, and every round returns a value
+ * that depends on its work so that the work can't be optimized away.
+ *
+ * Usage: java DataStructureBenchmark [group] [maxSize]
+ *   group   - tree, list, queue, sort or all (the default)
+ *   maxSize - the largest input size; the sizes are 1K, 10K, 100K,
+ *             1M and 10M, up to maxSize (default 1000000)
+ * Give the JVM a large heap (e.g. -Xmx8g) for the 10M inputs.
+ */
+public class DataStructureBenchmark {
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 5;
+
+    // the shapes of input
+    private static final String[] SHAPES = {"sorted", "reversed", "random", "duplicates"};
+
+    // the # of random positions read by the getItem benchmarks, which
+    // take O(n) time per operation in LLList
+    private static final int RANDOM_READS = 1000;
+
+    // combines the results of the rounds, so they can't be optimized away
+    private static long sink;
+
+    /*
+     * One measured round. run() performs the operations being measured
+     * and returns a value that depends on them.
+     */
+    private interface Round {
+        long run();
+    }
+
+    /*
+     * measure - times the rounds produced by setUp (which is not timed),
+     * and prints the median time per operation for the specified # of
+     * operations per round
+     */
+    private static void measure(String group, String workload, String impl,
+                                String shape, int n, long ops,
+                                Supplier<Round> setUp) {
+        long[] nanos = new long[MEASURED_ROUNDS];
+        for (int r = 0; r < WARMUP_ROUNDS + MEASURED_ROUNDS; r++) {
+            Round round = setUp.get();
+            long start = System.nanoTime();
+            sink += round.run();
+            long elapsed = System.nanoTime() - start;
+            if (r >= WARMUP_ROUNDS) {
+                nanos[r - WARMUP_ROUNDS] = elapsed;
+            }
+        }
+        Arrays.sort(nanos);
+        double perOp = (double) nanos[MEASURED_ROUNDS / 2] / ops;
+        System.out.println(String.format("%-6s %-14s %-18s %-10s %9d %12.1f ns/op",
+                                         group, workload, impl, shape, n, perOp));
+    }
+
+    /*
+     * keys - returns n keys in the specified shape: 0..n-1 in increasing
+     * or decreasing order, a random permutation of 0..n-1, or random keys
+     * with only about n/100 distinct values
+     */
+    private static int[] keys(int n, String shape) {
+        Random rand = new Random(n);
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (shape.equals("reversed")) {
+                keys[i] = n - 1 - i;
+            } else if (shape.equals("duplicates")) {
+                keys[i] = rand.nextInt(Math.max(1, n / 100));
+            } else {
+                keys[i] = i;
+            }
+        }
+        if (shape.equals("random")) {
+            for (int i = n - 1; i > 0; i--) {
+                int j = rand.nextInt(i + 1);
+                int temp = keys[i];
+                keys[i] = keys[j];
+                keys[j] = temp;
+            }
+        }
+        return keys;
+    }
+
+    /*
+     * LinkedTree insert, search, delete and inorder iteration, in
+     * balanced mode and (for random keys only, since the other shapes
+     * degenerate into an O(n^2) list) in the default mode, against
+     * TreeMap. The searches and deletions use the keys in the order
+     * they were inserted; iteration is timed per distinct key.
+     */
+    private static void treeBenchmarks(int n) {
+        for (String shape : SHAPES) {
+            int[] keys = keys(n, shape);
+            Object[] items = new Object[n];
+            boolean[] modes = shape.equals("random") ? new boolean[] {true, false}
+                                                     : new boolean[] {true};
+            for (boolean balanced : modes) {
+                String impl = balanced ? "LinkedTree(AVL)" : "LinkedTree";
+                Supplier<LinkedTree> build = () -> {
+                    LinkedTree tree = new LinkedTree(balanced);
+                    for (int key : keys) {
+                        tree.insert(key, null);
+                    }
+                    return tree;
+                };
+                LinkedTree built = build.get();
+
+                measure("tree", "insert", impl, shape, n, n, () -> () -> {
+                    return build.get().size();
+                });
+                measure("tree", "search", impl, shape, n, n, () -> () -> {
+                    long found = 0;
+                    for (int key : keys) {
+                        if (built.search(key) != null) {
+                            found++;
+                        }
+                    }
+                    return found;
+                });
+                measure("tree", "iterate", impl, shape, n, built.size(), () -> () -> {
+                    long total = 0;
+                    LinkedTreeIterator iter = built.inorderIterator();
+                    while (iter.hasNext()) {
+                        total += iter.next();
+                    }
+                    return total;
+                });
+                measure("tree", "delete", impl, shape, n, n, () -> {
+                    LinkedTree tree = build.get();
+                    return () -> {
+                        long removed = 0;
+                        for (int key : keys) {
+                            if (tree.delete(key) != null) {
+                                removed++;
+                            }
+                        }
+                        return removed;
+                    };
+                });
+            }
+
+            Supplier<TreeMap<Integer, Object>> buildMap = () -> {
+                TreeMap<Integer, Object> map = new TreeMap<Integer, Object>();
+                for (int key : keys) {
+                    map.put(key, items);
+                }
+                return map;
+            };
+            TreeMap<Integer, Object> builtMap = buildMap.get();
+
+            measure("tree", "insert", "TreeMap", shape, n, n, () -> () -> {
+                return buildMap.get().size();
+            });
+            measure("tree", "search", "TreeMap", shape, n, n, () -> () -> {
+                long found = 0;
+                for (int key : keys) {
+                    if (builtMap.get(key) != null) {
+                        found++;
+                    }
+                }
+                return found;
+            });
+            measure("tree", "iterate", "TreeMap", shape, n, builtMap.size(), () -> () -> {
+                long total = 0;
+                for (int key : builtMap.keySet()) {
+                    total += key;
+                }
+                return total;
+            });
+            measure("tree", "delete", "TreeMap", shape, n, n, () -> {
+                TreeMap<Integer, Object> map = buildMap.get();
+                return () -> {
+                    long removed = 0;
+                    for (int key : keys) {
+                        if (map.remove(key) != null) {
+                            removed++;
+                        }
+                    }
+                    return removed;
+                };
+            });
+        }
+    }
+
+    /*
+     * Benchmarks for one implementation of our List interface: adding n
+     * items, reading RANDOM_READS random positions, reading every
+     * position in order with getItem, iterating, and
+     * removing all of the items. The items are added and removed at the
+     * front if atFront is true, and at the end otherwise, whichever is
+     * cheap for the implementation.
+     */
+    private static void listBenchmarks(String impl, Supplier<List> factory,
+                                       boolean atFront, int n) {
+        String end = atFront ? "front" : "end";
+        Supplier<List> build = () -> {
+            List list = factory.get();
+            for (int i = 0; i < n; i++) {
+                list.addItem(i, atFront ? 0 : i);
+            }
+            return list;
+        };
+        List built = build.get();
+        int[] positions = new int[RANDOM_READS];
+        Random rand = new Random(n);
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = rand.nextInt(n);
+        }
+
+        measure("list", "add " + end, impl, "-", n, n, () -> () -> {
+            return build.get().length();
+        });
+        measure("list", "get random", impl, "-", n, RANDOM_READS, () -> () -> {
+            long total = 0;
+            for (int i : positions) {
+                total += (Integer) built.getItem(i);
+            }
+            return total;
+        });
+        measure("list", "get in order", impl, "-", n, n, () -> () -> {
+            long total = 0;
+            for (int i = 0; i < built.length(); i++) {
+                total += (Integer) built.getItem(i);
+            }
+            return total;
+        });
+        measure("list", "iterate", impl, "-", n, n, () -> () -> {
+            long total = 0;
+            ListIterator iter = built.iterator();
+            while (iter.hasNext()) {
+                total += (Integer) iter.next();
+            }
+            return total;
+        });
+        measure("list", "remove " + end, impl, "-", n, n, () -> {
+            List list = build.get();
+            return () -> {
+                long total = 0;
+                for (int i = 0; i < n; i++) {
+                    total += (Integer) list.removeItem(atFront ? 0 : list.length() - 1);
+                }
+                return total;
+            };
+        });
+    }
+
+    /*
+     * The List benchmarks for each of our List implementations, and the
+     * same operations on java.util.ArrayList. ArrayList adds and removes
+     * items at the end, which is where those operations are cheap for it.
+     */
+    private static void listBenchmarks(int n) {
+        listBenchmarks("LLList", LLList::new, true, n);
+        listBenchmarks("ArrList", ArrList::new, false, n);
+        listBenchmarks("UnrolledList", UnrolledList::new, false, n);
+        listBenchmarks("TreeList", TreeList::new, false, n);
+
+        Supplier<ArrayList<Object>> build = () -> {
+            ArrayList<Object> list = new ArrayList<Object>();
+            for (int i = 0; i < n; i++) {
+                list.add(i);
+            }
+            return list;
+        };
+        ArrayList<Object> built = build.get();
+        int[] positions = new int[RANDOM_READS];
+        Random rand = new Random(n);
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = rand.nextInt(n);
+        }
+
+        measure("list", "add end", "ArrayList", "-", n, n, () -> () -> {
+            return build.get().size();
+        });
+        measure("list", "get random", "ArrayList", "-", n, RANDOM_READS, () -> () -> {
+            long total = 0;
+            for (int i : positions) {
+                total += (Integer) built.get(i);
+            }
+            return total;
+        });
+        measure("list", "get in order", "ArrayList", "-", n, n, () -> () -> {
+            long total = 0;
+            for (int i = 0; i < built.size(); i++) {
+                total += (Integer) built.get(i);
+            }
+            return total;
+        });
+        measure("list", "iterate", "ArrayList", "-", n, n, () -> () -> {
+            long total = 0;
+            for (Object item : built) {
+                total += (Integer) item;
+            }
+            return total;
+        });
+        measure("list", "remove end", "ArrayList", "-", n, n, () -> {
+            ArrayList<Object> list = build.get();
+            return () -> {
+                long total = 0;
+                for (int i = n - 1; i >= 0; i--) {
+                    total += (Integer) list.remove(i);
+                }
+                return total;
+            };
+        });
+    }
+
+    /*
+     * LLQueue against ArrayDeque: n insertions followed by n removals,
+     * counted as 2n operations.
+     */
+    private static void queueBenchmarks(int n) {
+        Integer[] items = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            items[i] = i;
+        }
+
+        measure("queue", "insert+remove", "LLQueue", "-", n, 2L * n, () -> () -> {
+            LLQueue<Integer> queue = new LLQueue<Integer>();
+            for (Integer item : items) {
+                queue.insert(item);
+            }
+            long total = 0;
+            while (!queue.isEmpty()) {
+                total += queue.remove();
+            }
+            return total;
+        });
+        measure("queue", "insert+remove", "ArrayDeque", "-", n, 2L * n, () -> () -> {
+            ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+            for (Integer item : items) {
+                queue.addLast(item);
+            }
+            long total = 0;
+            while (!queue.isEmpty()) {
+                total += queue.removeFirst();
+            }
+            return total;
+        });
+    }
+
+    /*
+     * SortHelper.quickSort against Arrays.sort on each shape of input.
+     * The time is per key sorted.
+     */
+    private static void sortBenchmarks(int n) {
+        for (String shape : SHAPES) {
+            int[] keys = keys(n, shape);
+            Object[] items = new Object[n];
+
+            measure("sort", "sort", "quickSort", shape, n, n, () -> {
+                int[] copy = keys.clone();
+                Object[] itemsCopy = items.clone();
+                return () -> {
+                    SortHelper.quickSort(copy, itemsCopy);
+                    return copy[n / 2];
+                };
+            });
+            measure("sort", "sort", "Arrays.sort", shape, n, n, () -> {
+                int[] copy = keys.clone();
+                return () -> {
+                    Arrays.sort(copy);
+                    return copy[n / 2];
+                };
+            });
+        }
+    }
+
+    public static void main(String[] args) {
+        String group = (args.length > 0) ? args[0] : "all";
+        int maxSize = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+
+        System.out.println(String.format("%-6s %-14s %-18s %-10s %9s %15s",
+                                         "group", "workload", "impl", "shape", "n", "time"));
+        for (int n = 1000; n <= maxSize && n > 0; n *= 10) {
+            if (group.equals("all") || group.equals("tree")) {
+                treeBenchmarks(n);
+            }
+            if (group.equals("all") || group.equals("list")) {
+                listBenchmarks(n);
+            }
+            if (group.equals("all") || group.equals("queue")) {
+                queueBenchmarks(n);
+            }
+            if (group.equals("all") || group.equals("sort")) {
+                sortBenchmarks(n);
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+}
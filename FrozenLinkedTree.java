@@ -0,0 +1,167 @@
+/*
+ * FrozenLinkedTree.java
+ *
+ * Computer Science E-22
+ */
+
+import java.util.*;
+
+/*
+ * A read-only index built from a LinkedTree that will not be modified
+ * again (see LinkedTree.freeze).
+ *
+ * The keys are stored in a primitive int array in Eytzinger order: the
+ * root of a perfectly balanced search tree is at position 1, and the
+ * children of the node at position k are at positions 2k and 2k+1, so
+ * the array holds the tree one level after another. A search reads the
+ * array from front to back instead of chasing Node references around
+ * the heap. The top levels, which every search goes through, are packed
+ * together at the front of the array and stay in the cache, and the
+ * loop has no unpredictable branch, since it just computes the next
+ * position from the result of a comparison.
+ *
+ * The data lists are kept in a parallel array.
+ */
+public class FrozenLinkedTree {
+    private int[] keys;        // keys[1..size] in Eytzinger order
+    private List[] data;       // data[k] is the data list for keys[k]
+    private int size;
+    
+    /*
+     * Constructs an index containing the keys and data lists of the
+     * specified tree. The data lists are shared with the tree.
+     */
+    public FrozenLinkedTree(LinkedTree tree) {
+        size = tree.size();
+        keys = new int[size + 1];
+        data = new List[size + 1];
+        
+        int[] sortedKeys = new int[size];
+        List[] sortedData = new List[size];
+        LinkedTreeRangeIterator iter =
+          tree.rangeSearch(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        for (int i = 0; iter.hasNext(); i++) {
+            sortedKeys[i] = iter.next();
+            sortedData[i] = iter.data();
+        }
+        
+        fill(sortedKeys, sortedData, 0, 1);
+    }
+    
+    /*
+     * fill - places the sorted keys in the subtree rooted at position k,
+     * by an inorder traversal of the implicit tree. next is the index
+     * of the next sorted key to place, and the updated index is returned.
+     */
+    private int fill(int[] sortedKeys, List[] sortedData, int next, int k) {
+        if (k <= size) {
+            next = fill(sortedKeys, sortedData, next, 2 * k);
+            keys[k] = sortedKeys[next];
+            data[k] = sortedData[next];
+            next++;
+            next = fill(sortedKeys, sortedData, next, 2 * k + 1);
+        }
+        return next;
+    }
+    
+    /* size - returns the # of keys in the index */
+    public int size() {
+        return size;
+    }
+    
+    /*
+     * position - returns the position of the smallest key >= key,
+     * or 0 if there is no such key.
+     */
+    private int position(int key) {
+        int k = 1;
+        while (k <= size) {
+            k = 2 * k + (keys[k] < key ? 1 : 0);
+        }
+        
+        // Each step to the right appended a 1 bit to k. Undo the steps
+        // after the last step to the left, which was at the answer.
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+    
+    /*
+     * search - returns the list of data items associated with the key,
+     * or null if the key is not in the index.
+     */
+    public List search(int key) {
+        int k = position(key);
+        if (k != 0 && keys[k] == key) {
+            return data[k];
+        }
+        return null;
+    }
+    
+    /*
+     * contains - returns true if the key is in the index
+     */
+    public boolean contains(int key) {
+        int k = position(key);
+        return k != 0 && keys[k] == key;
+    }
+    
+    /*
+     * Benchmark: builds a tree from random keys, freezes it, and times
+     * the same random lookups on both. The optional argument is the #
+     * of keys (default 4,000,000).
+     */
+    public static void main(String[] args) {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 4000000;
+        int lookups = 5000000;
+        Random rand = new Random(9);
+        
+        int[] keys = new int[n];
+        Object[] dataItems = new Object[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = rand.nextInt();
+            dataItems[i] = "d" + i;
+        }
+        LinkedTree tree = new LinkedTree();
+        for (int i = 0; i < n; i++) {
+            tree.insert(keys[i], dataItems[i]);
+        }
+        FrozenLinkedTree frozen = tree.freeze();
+        
+        // half of the probes are hits, half are (almost certainly) misses
+        int[] probes = new int[lookups];
+        for (int i = 0; i < lookups; i++) {
+            probes[i] = (i % 2 == 0) ? keys[rand.nextInt(n)] : rand.nextInt();
+        }
+        
+        System.out.println("--- Benchmark: " + n + " keys (" + tree.size() + " distinct), " + lookups + " lookups ---");
+        boolean same = true;
+        for (int i = 0; i < lookups; i += 97) {
+            same = same && (tree.search(probes[i]) == frozen.search(probes[i]));
+        }
+        System.out.println("frozen index gives the same results? " + same);
+        
+        for (int round = 1; round <= 3; round++) {
+            long start = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < lookups; i++) {
+                if (tree.search(probes[i]) != null) {
+                    found++;
+                }
+            }
+            long treeNanos = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            int frozenFound = 0;
+            for (int i = 0; i < lookups; i++) {
+                if (frozen.search(probes[i]) != null) {
+                    frozenFound++;
+                }
+            }
+            long frozenNanos = System.nanoTime() - start;
+            
+            System.out.println("round " + round + ": LinkedTree.search "
+              + (treeNanos / lookups) + " ns/lookup, FrozenLinkedTree.search "
+              + (frozenNanos / lookups) + " ns/lookup, hits " + found
+              + "/" + frozenFound);
+        }
+    }
+}
@@ -28,12 +28,20 @@ public class LLList implements List {
     private Node head;     // dummy head node
     private int length;    // # of items in the list
     
+    // The node most recently reached by getNode, and its position
+    // (-1 for the dummy head node). addItem and removeItem only change
+    // the list after the node they reach, so the cursor stays valid.
+    private Node cursor;
+    private int cursorIndex;
+    
     /*
      * Constructs a LLList object for a list that is initially empty.
      */
     public LLList() {
         head = new Node(null, null);
         length = 0;
+        cursor = head;
+        cursorIndex = -1;
     }
     
     /*
@@ -50,6 +58,8 @@ public class LLList implements List {
         }
         
         length = initItems.length;
+        cursor = head;
+        cursorIndex = -1;
     }
     
     /* 
@@ -73,16 +83,27 @@ public class LLList implements List {
      * parameter is valid.  
      * 
      * If i == -1, it returns a reference to the dummy head node.
+     *
+     * If i is at or after the position of the cursor, the walk starts
+     * from the cursor rather than the head, so visiting positions in
+     * increasing order (as in a loop over getItem(i)) takes O(n) time
+     * in total rather than O(n^2).
      */
     private Node getNode(int i) {
         Node trav = head;
         int travIndex = -1;
+        if (i >= cursorIndex) {
+            trav = cursor;
+            travIndex = cursorIndex;
+        }
         
         while (travIndex < i) {
             travIndex++;
             trav = trav.next;
         }
         
+        cursor = trav;
+        cursorIndex = travIndex;
         return trav;
     }
     
@@ -118,6 +139,11 @@ public class LLList implements List {
         newNode.next = prevNode.next;
         prevNode.next = newNode;
         
+        // The new node is now at position i, so a following
+        // addItem(..., i + 1) continues from it.
+        cursor = newNode;
+        cursorIndex = i;
+        
         length++;
         return true;
     }
@@ -144,6 +170,92 @@ public class LLList implements List {
         return removed;
     }
     
+    /*
+     * addAll - adds the items in the array at positions i, i+1, i+2,
+     * etc., in order. The new nodes are linked into a chain first, and
+     * the chain is spliced in after a single walk to position i-1, so
+     * adding k items takes O(i + k) time rather than O(k * i). Always
+     * returns true, because the list is never full.
+     */
+    public boolean addAll(int i, Object[] items) {
+        if (i < 0 || i > length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (items.length == 0) {
+            return true;
+        }
+        
+        Node first = new Node(items[0], null);
+        Node last = first;
+        for (int k = 1; k < items.length; k++) {
+            last.next = new Node(items[k], null);
+            last = last.next;
+        }
+        
+        Node prevNode = getNode(i - 1);
+        last.next = prevNode.next;
+        prevNode.next = first;
+        
+        cursor = last;
+        cursorIndex = i + items.length - 1;
+        length += items.length;
+        return true;
+    }
+    
+    /*
+     * removeRange - removes the items in positions from through to-1
+     * by unlinking them all at once after a single walk, in O(to) time
+     */
+    public void removeRange(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        Node prevNode = getNode(from - 1);
+        Node trav = prevNode;
+        for (int k = from; k < to; k++) {
+            trav = trav.next;
+        }
+        prevNode.next = trav.next;
+        
+        length -= to - from;
+    }
+    
+    /*
+     * toArray - returns an array containing the items in the list, in order
+     */
+    public Object[] toArray() {
+        Object[] result = new Object[length];
+        Node trav = head.next;
+        for (int k = 0; k < length; k++) {
+            result[k] = trav.item;
+            trav = trav.next;
+        }
+        return result;
+    }
+    
+    /*
+     * copyOfRange - returns a new LLList containing copies of the
+     * references to the items in positions from through to-1, after a
+     * single walk to position from
+     */
+    public List copyOfRange(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        LLList copy = new LLList();
+        Node last = copy.head;
+        Node trav = getNode(from - 1);
+        for (int k = from; k < to; k++) {
+            trav = trav.next;
+            last.next = new Node(trav.item, null);
+            last = last.next;
+        }
+        copy.length = to - from;
+        return copy;
+    }
+    
     /*
      * toString - converts the list into a String of the form 
      * {item0, item1, ...}
@@ -201,4 +313,53 @@ public class LLList implements List {
             return item;
         }
     }
+    
+    public static void main(String[] args) {
+        System.out.println("--- Testing the bulk operations ---");
+        List[] lists = {new LLList(new Object[] {"a", "b", "c", "d"}),
+                        new ArrList(new Object[] {"a", "b", "c", "d"}),
+                        new TreeList(new Object[] {"a", "b", "c", "d"})};
+        for (List list : lists) {
+            String name = list.getClass().getName();
+            list.addAll(2, new Object[] {"x", "y", "z"});
+            System.out.println(name + " addAll(2, {x, y, z}): " + list + " , Expected : {a, b, x, y, z, c, d}, Match? "
+                               + list.toString().equals("{a, b, x, y, z, c, d}"));
+            List copy = list.copyOfRange(1, 4);
+            list.removeRange(1, 5);
+            System.out.println(name + " removeRange(1, 5): " + list + " , Expected : {a, c, d}, Match? "
+                               + list.toString().equals("{a, c, d}"));
+            System.out.println(name + " copyOfRange(1, 4) taken before: " + copy + " , Expected : {b, x, y}, Match? "
+                               + copy.toString().equals("{b, x, y}"));
+            System.out.println(name + " toArray: " + Arrays.toString(list.toArray()) + " , Expected : [a, c, d], Match? "
+                               + Arrays.equals(list.toArray(), new Object[] {"a", "c", "d"}));
+        }
+        ArrList small = new ArrList(4);
+        small.addAll(0, new Object[] {"p", "q", "r"});
+        boolean added = small.addAll(1, new Object[] {"s", "t"});
+        System.out.println("addAll past the maximum size: " + added + ", " + small + " , Expected : false, {p, q, r}, Match? "
+                           + (!added && small.toString().equals("{p, q, r}")));
+        
+        System.out.println();
+        int n = 100000;
+        System.out.println("--- Loading and trimming " + n + " items in the middle of an LLList of " + n + " ---");
+        Object[] items = new Object[n];
+        Arrays.fill(items, "item");
+        for (int mode = 0; mode < 2; mode++) {
+            LLList list = new LLList(items);
+            long start = System.nanoTime();
+            if (mode == 0) {
+                for (int k = 0; k < n; k++) {
+                    list.addItem(items[k], n / 2 + k);
+                }
+                for (int k = 0; k < n; k++) {
+                    list.removeItem(n / 2);
+                }
+            } else {
+                list.addAll(n / 2, items);
+                list.removeRange(n / 2, n / 2 + n);
+            }
+            long micros = (System.nanoTime() - start) / 1000;
+            System.out.println((mode == 0 ? "addItem/removeItem loops: " : "addAll/removeRange: ") + micros + " us, length " + list.length());
+        }
+    }
 }
@@ -0,0 +1,19 @@
+/*
+ * LevelOrderVisitor.java
+ *
+ * Computer Science E-22
+ */
+
+/**
+ * An interface for the callbacks made by LinkedTree.levelOrder, which
+ * visits the keys of a tree one level at a time.
+ */
+public interface LevelOrderVisitor {
+    // Called for each key, in level order. level is the depth of the
+    // key's node (0 for the root).
+    void visit(int key, int level);
+
+    // Called after the last key in each level has been visited.
+    default void endOfLevel(int level) {
+    }
+}
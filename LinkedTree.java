@@ -8,7 +8,12 @@
  *     username:
  */
 
+import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.stream.*;
 
 /*
  * LinkedTree - a class that represents a binary tree containing data
@@ -19,64 +24,212 @@ public class LinkedTree {
     // An inner class for the nodes in the tree
     private class Node {
         private int key;         // the key field
-        private LLList data;     // list of data values for this key
+        private ValueBag data;   // list of data values for this key
         private Node left;       // reference to the left child/subtree
         private Node right;      // reference to the right child/subtree
-        private Node parent;     // reference to the parent. NOT YET MAINTAINED!
+        private Node parent;     // reference to the parent
+        private int height;      // height of the subtree (balanced mode only)
+        private int size;        // # of nodes in the subtree
         
         private Node(int key, Object data){
             this.key = key;
-            this.data = new LLList();
-            this.data.addItem(data, 0);
+            this.data = new ValueBag(data);
             this.left = null;
             this.right = null;
             this.parent = null;
+            this.height = 0;
+            this.size = 1;
+        }
+        
+        private Node(int key, ValueBag data) {
+            this.key = key;
+            this.data = data;
+            this.height = 0;
+            this.size = 1;
         }
     }
     
     // the root of the tree as a whole
     private Node root;
     
+    // true if the tree rebalances itself (AVL) after every update
+    private boolean balanced;
+    
+    // # of rotations performed so far in balanced or splay mode
+    private long rotations;
+    
+    // true if search and insert start from the finger (see setFingerSearch)
+    private boolean fingering;
+    
+    // the finger is the root of a subtree with at least this many nodes
+    private static final int FINGER_SIZE = 64;
+    
+    // In finger mode, an ancestor of the node visited by the last search
+    // or insert, and exclusive bounds on the keys in its subtree. finger
+    // is null when there is none; rotations and deletions reset it,
+    // because they can change the bounds.
+    private Node finger;
+    private long fingerLo;
+    private long fingerHi;
+    
+    // the width of the finger's range (Long.MAX_VALUE if it is unbounded
+    // on either side), and the last key outside it
+    private long fingerWidth;
+    private long fingerMiss;
+    
+    // true if the tree splays the nodes it accesses (see setSplaying)
+    private boolean splaying;
+    
+    // the tree's metrics, or null if they are turned off (see setMetrics)
+    private LinkedTreeMetrics metrics;
+    
     public LinkedTree() {
         root = null;
     }
+    
+    /*
+     * Constructs an empty tree. If balanced is true, insert, delete and
+     * deleteMax keep the tree AVL-balanced, so that its height stays
+     * O(log n) regardless of the order in which the keys arrive.
+     */
+    public LinkedTree(boolean balanced) {
+        root = null;
+        this.balanced = balanced;
+    }
 
     public LinkedTree(int[] keys, Object[] dataItems) {
+        this(keys, dataItems, false);
+    }
+
+    /*
+     * Constructs a tree containing the specified (key, data) pairs.
+     * The arrays are sorted (if they aren't already) and the nodes are
+     * then linked directly from the sorted arrays in O(n) time, rather
+     * than by calling insert for every pair. Data items with equal
+     * keys are grouped into a single node's data list. Large inputs
+     * are built by splitting the halves across the ForkJoin pool.
+     */
+    public LinkedTree(int[] keys, Object[] dataItems, boolean balanced) {
+        this.balanced = balanced;
         if (keys.length != dataItems.length) {
             System.out.println("Cannot create the LinkedTree. Mismatch between keys and data arrays lengths");
+            return;
         }
         else if (keys.length == 0) {
             return;
         }
 
         //Sorting the arrays
-        SortHelper.quickSort(keys, dataItems);
+        if (!isSorted(keys)) {
+            SortHelper.quickSort(keys, dataItems);
+        }
 
-        //Inserting the key-data values into the tree
-        insertBal(keys, dataItems, 0, keys.length - 1);
+        //Grouping the data items of equal keys, in the same order that
+        //repeated calls to insert would give them: the rest of a run of
+        //equal keys is added to the first one's bag in a single copy
+        int[] uniqueKeys = new int[keys.length];
+        ValueBag[] lists = new ValueBag[keys.length];
+        int count = 0;
+        int i = 0;
+        while (i < keys.length) {
+            int end = i + 1;
+            while (end < keys.length && keys[end] == keys[i]) {
+                end++;
+            }
+            uniqueKeys[count] = keys[i];
+            lists[count] = new ValueBag(dataItems[i]);
+            if (end - i > 1) {
+                lists[count].addAllNewestFirst(dataItems, i + 1, end);
+            }
+            count++;
+            i = end;
+        }
+
+        //Linking the nodes of the tree
+        if (count >= PARALLEL_BUILD_THRESHOLD) {
+            root = ForkJoinPool.commonPool().invoke(
+              new BuildTask(uniqueKeys, lists, 0, count - 1));
+        } else {
+            root = buildBal(uniqueKeys, lists, 0, count - 1);
+        }
+    }
+
+    // subarrays with at least this many keys are built in parallel
+    private static final int PARALLEL_BUILD_THRESHOLD = 1 << 16;
+
+    //Helper to be used by the Constructor: returns true if the keys
+    //are already in ascending order
+    private static boolean isSorted(int[] keys) {
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i - 1] > keys[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     //Helper to be used by the Constructor
-    private void insertBal (int []keys, Object[] dataItems, int first, int last) {
-        //We create an insert function that calls itself recursively
-        //We will follow a fashion similar to the partitioning of quickSort
-        
-        //Error checking
+    private Node buildBal(int[] keys, ValueBag[] lists, int first, int last) {
+        //We follow a fashion similar to the partitioning of quickSort:
+        //the middle element becomes the root of the subtree, and the
+        //subarrays to either side of it become its left and right subtrees
         if (first > last) {
-            return;
+            return null;
         }
-        //Base case: If the passed arrays are of size 1, insert that element
-        else if (first == last) {
-            insert (keys[first], dataItems[first]);
+
+        int split = (first + last)/2;
+        Node n = new Node(keys[split], lists[split]);
+        link(n, buildBal(keys, lists, first, split - 1),
+          buildBal(keys, lists, split + 1, last));
+        return n;
+    }
+
+    //Makes left and right the children of n, maintaining the parent
+    //references and the height and size of n
+    private static void link(Node n, Node left, Node right) {
+        n.left = left;
+        n.right = right;
+        if (left != null) {
+            left.parent = n;
+        }
+        if (right != null) {
+            right.parent = n;
+        }
+        updateNode(n);
+    }
+
+    /*
+     * A ForkJoin task that builds the subtree for keys[first:last],
+     * building its left half in a forked task and its right half in
+     * the current thread.
+     */
+    private class BuildTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+
+        private int[] keys;
+        private ValueBag[] lists;
+        private int first;
+        private int last;
+
+        private BuildTask(int[] keys, ValueBag[] lists, int first, int last) {
+            this.keys = keys;
+            this.lists = lists;
+            this.first = first;
+            this.last = last;
         }
-        else {
-            //If the passed array's size is more than 1, then insert the middle
-            //element, then call the insertion on the remaining subarrays
+
+        protected Node compute() {
+            if (last - first + 1 < PARALLEL_BUILD_THRESHOLD) {
+                return buildBal(keys, lists, first, last);
+            }
 
             int split = (first + last)/2;
-            insert (keys[split], dataItems[split]);
-            insertBal(keys, dataItems, first, split - 1);
-            insertBal(keys, dataItems, split + 1, last);
+            BuildTask leftTask = new BuildTask(keys, lists, first, split - 1);
+            leftTask.fork();
+            Node right = new BuildTask(keys, lists, split + 1, last).compute();
+            Node n = new Node(keys[split], lists[split]);
+            link(n, leftTask.join(), right);
+            return n;
         }
     }
     
@@ -161,65 +314,262 @@ public class LinkedTree {
         }
     }
     
-    /* 
-     * Inner class for temporarily associating a node's depth
-     * with the node, so that levelOrderPrint can print the levels
-     * of the tree on separate lines.
+    /*
+     * A queue of nodes stored in a circular array, which doubles in
+     * size when it fills up. Each level-order traversal uses one of its
+     * own, so a traversal allocates a single array (regrown a few times
+     * for a wide tree) rather than a queue node per tree node, and
+     * traversals never share state.
      */
-    private class NodePlusDepth {
-        private Node node;
-        private int depth;
+    private static class NodeRing {
+        private Node[] items = new Node[16];    // length is a power of 2
+        private int front = 0;
+        private int count = 0;
         
-        private NodePlusDepth(Node node, int depth) {
-            this.node = node;
-            this.depth = depth;
+        private boolean isEmpty() {
+            return count == 0;
+        }
+        
+        private void insert(Node n) {
+            if (count == items.length) {
+                Node[] bigger = new Node[2 * items.length];
+                for (int i = 0; i < count; i++) {
+                    bigger[i] = items[(front + i) & (items.length - 1)];
+                }
+                items = bigger;
+                front = 0;
+            }
+            items[(front + count) & (items.length - 1)] = n;
+            count++;
+        }
+        
+        private Node remove() {
+            Node n = items[front];
+            items[front] = null;
+            front = (front + 1) & (items.length - 1);
+            count--;
+            return n;
+        }
+    }
+    
+    /*
+     * Visits the keys of the tree in level order, passing each of them
+     * to the visitor along with its level, and telling the visitor
+     * when each level ends. Rather than wrapping each node with its
+     * depth, the traversal counts how many nodes of the current level
+     * are left in the queue and how many of the next level have been
+     * added to it.
+     */
+    public void levelOrder(LevelOrderVisitor visitor) {
+        if (root == null) {
+            return;
+        }
+        NodeRing q = new NodeRing();
+        q.insert(root);
+        
+        int level = 0;
+        int leftInLevel = 1;     // # of nodes of this level still in q
+        int nextLevel = 0;       // # of nodes of the next level in q
+        while (!q.isEmpty()) {
+            Node n = q.remove();
+            visitor.visit(n.key, level);
+            
+            if (n.left != null) {
+                q.insert(n.left);
+                nextLevel++;
+            }
+            if (n.right != null) {
+                q.insert(n.right);
+                nextLevel++;
+            }
+            
+            leftInLevel--;
+            if (leftInLevel == 0) {
+                visitor.endOfLevel(level);
+                level++;
+                leftInLevel = nextLevel;
+                nextLevel = 0;
+            }
         }
     }
     
     /*
      * Prints the keys of the tree in the order given by a
-     * level-order traversal.
+     * level-order traversal, one level per line. Each level is
+     * collected in a buffer and printed with a single call.
      */
     public void levelOrderPrint() {
-        LLQueue<NodePlusDepth> q = new LLQueue<NodePlusDepth>();
+        final StringBuilder line = new StringBuilder();
+        levelOrder(new LevelOrderVisitor() {
+            public void visit(int key, int level) {
+                line.append(key).append(' ');
+            }
+            
+            public void endOfLevel(int level) {
+                System.out.println(line);
+                line.setLength(0);
+            }
+        });
+        if (root == null) {
+            System.out.println();
+        }
+    }
+    
+    /*
+     * Returns an iterator that visits the keys in level order. Each
+     * iterator has its own queue, and it only looks at the children of
+     * a node when it returns that node, so the levels are produced
+     * lazily.
+     */
+    public LinkedTreeLevelIterator levelOrderIterator() {
+        return new LevelOrderIterator();
+    }
+    
+    /* inner class for a level-order iterator */
+    private class LevelOrderIterator implements LinkedTreeLevelIterator {
+        private NodeRing q;
+        private int level;          // the level of the last key returned
+        private int leftInLevel;    // # of nodes of the current level in q
+        private int nextLevel;      // # of nodes of the next level in q
         
-        // Insert the root into the queue if the root is not null.
-        if (root != null) {
-            q.insert(new NodePlusDepth(root, 0));
+        private LevelOrderIterator() {
+            q = new NodeRing();
+            if (root != null) {
+                q.insert(root);
+            }
+            level = -1;
+            leftInLevel = 0;
+            nextLevel = q.count;
         }
         
-        // We continue until the queue is empty.  At each step,
-        // we remove an element from the queue, print its value,
-        // and insert its children (if any) into the queue.
-        // We also keep track of the current level, and add a newline
-        // whenever we advance to a new level.
-        int level = 0;
-        while (!q.isEmpty()) {
-            NodePlusDepth item = q.remove();
+        public boolean hasNext() {
+            return !q.isEmpty();
+        }
+        
+        public int next() {
+            if (q.isEmpty()) {
+                throw new NoSuchElementException();
+            }
             
-            if (item.depth > level) {
-                System.out.println();
+            if (leftInLevel == 0) {
                 level++;
+                leftInLevel = nextLevel;
+                nextLevel = 0;
             }
-            System.out.print(item.node.key + " ");
             
-            if (item.node.left != null) {
-                q.insert(new NodePlusDepth(item.node.left, item.depth + 1));
+            Node n = q.remove();
+            if (n.left != null) {
+                q.insert(n.left);
+                nextLevel++;
             }
-            if (item.node.right != null) {
-                q.insert(new NodePlusDepth(item.node.right, item.depth + 1));
+            if (n.right != null) {
+                q.insert(n.right);
+                nextLevel++;
             }
+            leftInLevel--;
+            return n.key;
         }
-        System.out.println();
+        
+        public int level() {
+            return level;
+        }
+    }
+    
+    /*
+     * Turns the tree's metrics on or off (see LinkedTreeMetrics).
+     * Turning them on starts from zeroed counters. While they are on,
+     * insert, search, delete and deleteMax are timed, and each of them
+     * first walks the key's search path from the root to count the
+     * comparisons it takes (outside the timed part). While they are off,
+     * the only cost is a null check per operation.
+     */
+    public void setMetrics(boolean on) {
+        metrics = on ? new LinkedTreeMetrics() : null;
+    }
+    
+    /*
+     * Returns a snapshot of the tree's metrics, including its current
+     * height and depth histogram, or null if the metrics are off.
+     * Computing the depth histogram visits every node.
+     */
+    public LinkedTreeMetrics.Snapshot metrics() {
+        if (metrics == null) {
+            return null;
+        }
+        
+        long[][] depthCounts = {new long[8]};
+        int[] height = {-1};
+        levelOrder(new LevelOrderVisitor() {
+            public void visit(int key, int level) {
+                if (level == depthCounts[0].length) {
+                    depthCounts[0] = Arrays.copyOf(depthCounts[0], 2 * level);
+                }
+                depthCounts[0][level]++;
+                height[0] = Math.max(height[0], level);
+            }
+        });
+        return metrics.snapshot(Arrays.copyOf(depthCounts[0], height[0] + 1));
+    }
+    
+    /*
+     * Returns the # of keys compared on the path from the root to the
+     * specified key (or to where it would be inserted). Like searchTree,
+     * it gives up after visiting as many nodes as the tree contains.
+     */
+    private int pathLength(int key) {
+        int steps = sizeOf(root);
+        int length = 0;
+        Node trav = root;
+        while (trav != null && length <= steps) {
+            length++;
+            if (key == trav.key) {
+                break;
+            }
+            trav = (key < trav.key) ? trav.left : trav.right;
+        }
+        return length;
     }
     
     /*
      * Searches for the specified key in the tree.
      * If it finds it, it returns the list of data items associated with the key.
-     * Invokes the recursive searchTree method to perform the actual search.
+     * Invokes the searchTree method to perform the actual search.
      */
-    public LLList search(int key) {
-        Node n = searchTree(root, key);
+    public List search(int key) {
+        if (metrics == null) {
+            return find(key);
+        }
+        int comparisons = pathLength(key);
+        long start = System.nanoTime();
+        List data = find(key);
+        metrics.record(LinkedTreeMetrics.SEARCH, key, comparisons, data != null, start);
+        return data;
+    }
+    
+    /*
+     * Returns true if the tree's metrics are on. ConcurrentLinkedTree
+     * uses this (with searchWithoutMetrics) to keep its optimistic reads
+     * from recording metrics while the tree may be changing.
+     */
+    boolean metricsEnabled() {
+        return metrics != null;
+    }
+    
+    /* Performs a search without recording it in the metrics. */
+    List searchWithoutMetrics(int key) {
+        return find(key);
+    }
+    
+    /* Performs a search, in whichever mode the tree is in. */
+    private List find(int key) {
+        Node n;
+        if (splaying) {
+            n = splaySearch(key);
+        } else if (fingering) {
+            n = fingerSearch(key);
+        } else {
+            n = searchTree(root, key);
+        }
         if (n == null) {
             return null;
         } else {
@@ -228,20 +578,360 @@ public class LinkedTree {
     }
     
     /*
-     * Recursively searches for the specified key in the tree/subtree
-     * whose root is specified. Note that the parameter is *not*
-     * necessarily the root of the entire tree.
+     * Searches for the specified key in the tree/subtree whose root is
+     * specified. Note that the parameter is *not* necessarily the root
+     * of the entire tree.
+     *
+     * The search is iterative, and it gives up after visiting as many
+     * nodes as the subtree contains. That never happens in a well-formed
+     * tree, but it lets an optimistic reader in ConcurrentLinkedTree that
+     * races with a writer stop rather than follow a transient cycle.
      */
     private static Node searchTree(Node root, int key) {
-        if (root == null) {
-            return null;
-        } else if (key == root.key) {
-            return root;
-        } else if (key < root.key) {
-            return searchTree(root.left, key);
+        int steps = sizeOf(root);
+        Node trav = root;
+        while (trav != null && steps >= 0) {
+            if (key == trav.key) {
+                return trav;
+            } else if (key < trav.key) {
+                trav = trav.left;
+            } else {
+                trav = trav.right;
+            }
+            steps--;
+        }
+        return null;
+    }
+    
+    /*
+     * Searches for a batch of keys at once, and returns an array whose
+     * element i is the list of data items for keys[i] (or null if that
+     * key is not in the tree), as search(keys[i]) would.
+     *
+     * Rather than starting from the root for every key, the keys are
+     * sorted once and the whole batch descends the tree together: at
+     * each node, the batch is split into the keys that go left, the
+     * keys that match the node and the keys that go right, so each node
+     * on a path shared by many keys is visited only once. Batches with
+     * at least PARALLEL_SEARCH_THRESHOLD keys are sorted and answered in
+     * parallel, with the two halves of a split handled by separate
+     * ForkJoin tasks.
+     *
+     * Unlike search, searchAll neither splays nor moves the finger.
+     */
+    public List[] searchAll(int[] keys) {
+        // Each probe packs a key (high 32 bits) with its position in keys
+        // (low 32 bits), so sorting the probes sorts by key and keeps
+        // track of where each result goes.
+        long[] probes = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            probes[i] = ((long) keys[i] << 32) | i;
+        }
+        
+        List[] results = new List[keys.length];
+        if (keys.length < PARALLEL_SEARCH_THRESHOLD) {
+            Arrays.sort(probes);
+            searchBatch(root, probes, 0, probes.length, results);
+        } else {
+            Arrays.parallelSort(probes);
+            ForkJoinPool.commonPool().invoke(
+              new SearchTask(root, probes, 0, probes.length, results));
+        }
+        return results;
+    }
+    
+    // batches with at least this many keys are searched in parallel
+    private static final int PARALLEL_SEARCH_THRESHOLD = 1 << 13;
+    
+    /*
+     * Returns the index of the first of the sorted probes in [lo, hi)
+     * that is >= bound, or hi if there is none.
+     */
+    private static int firstAtLeast(long[] probes, int lo, int hi, long bound) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (probes[mid] < bound) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    /*
+     * Answers the sorted probes in [lo, hi) that match n.key, and returns
+     * the two indices that split the probes, packed into a long: the
+     * probes before the first index (high 32 bits) have keys < n.key,
+     * and those from the second index (low 32 bits) on have keys > n.key.
+     */
+    private static long splitBatch(Node n, long[] probes, int lo, int hi,
+                                   List[] results) {
+        int less = firstAtLeast(probes, lo, hi, (long) n.key << 32);
+        // No probe has position 0xFFFFFFFF, so this finds the first
+        // probe with a key > n.key.
+        int greater = firstAtLeast(probes, less, hi, ((long) n.key << 32) | 0xFFFFFFFFL);
+        for (int i = less; i < greater; i++) {
+            results[(int) probes[i]] = n.data;
+        }
+        return ((long) less << 32) | greater;
+    }
+    
+    /*
+     * Answers the sorted probes in [lo, hi) from the subtree rooted at n.
+     * A few probes are answered by ordinary searches. Otherwise, the
+     * method recurses on the side of each split with fewer probes and
+     * loops on the other, so the recursion depth is at most log(hi - lo)
+     * even if the tree is badly unbalanced.
+     */
+    private static void searchBatch(Node n, long[] probes, int lo, int hi,
+                                    List[] results) {
+        while (n != null && hi - lo > SMALL_BATCH) {
+            long split = splitBatch(n, probes, lo, hi, results);
+            int less = (int) (split >>> 32);
+            int greater = (int) split;
+            if (less - lo < hi - greater) {
+                searchBatch(n.left, probes, lo, less, results);
+                n = n.right;
+                lo = greater;
+            } else {
+                searchBatch(n.right, probes, greater, hi, results);
+                n = n.left;
+                hi = less;
+            }
+        }
+        
+        if (n != null) {
+            for (int i = lo; i < hi; i++) {
+                Node match = searchTree(n, (int) (probes[i] >> 32));
+                if (match != null) {
+                    results[(int) probes[i]] = match.data;
+                }
+            }
+        }
+    }
+    
+    // batches with at most this many keys are answered by ordinary searches
+    private static final int SMALL_BATCH = 4;
+    
+    /*
+     * A ForkJoin task that answers a batch of sorted probes, forking a
+     * task for the probes that go left and handling the ones that go
+     * right in the current thread.
+     */
+    private static class SearchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Node n;
+        private long[] probes;
+        private int lo;
+        private int hi;
+        private List[] results;
+        
+        private SearchTask(Node n, long[] probes, int lo, int hi, List[] results) {
+            this.n = n;
+            this.probes = probes;
+            this.lo = lo;
+            this.hi = hi;
+            this.results = results;
+        }
+        
+        protected void compute() {
+            if (n == null || lo >= hi) {
+                return;
+            }
+            if (hi - lo < PARALLEL_SEARCH_THRESHOLD) {
+                searchBatch(n, probes, lo, hi, results);
+                return;
+            }
+            
+            long split = splitBatch(n, probes, lo, hi, results);
+            SearchTask leftTask =
+              new SearchTask(n.left, probes, lo, (int) (split >>> 32), results);
+            leftTask.fork();
+            new SearchTask(n.right, probes, (int) split, hi, results).compute();
+            leftTask.join();
+        }
+    }
+    
+    /*
+     * Turns finger mode on or off. In finger mode, the tree remembers a
+     * subtree of at least FINGER_SIZE nodes around the last key searched
+     * for or inserted (the "finger"), along with the range of keys it
+     * can hold. A search or insert whose key is in that range descends
+     * from the finger rather than from the root, so sorted or nearly
+     * sorted access skips the upper levels of the tree. Any other key is
+     * handled by a plain descent from the root. The finger is then moved
+     * near that key only if the key is close to the finger's range or
+     * to the previous key outside it -- as when a sorted run leaves the
+     * finger or a new one starts -- since moving it touches nodes off
+     * the search path. Random access therefore pays only for checking
+     * the range, and costs about as much as it does without the finger.
+     */
+    public void setFingerSearch(boolean on) {
+        fingering = on;
+        finger = null;
+    }
+    
+    /* Returns true if the key is in the finger's range. */
+    private boolean inFinger(int key) {
+        return finger != null && fingerLo < key && key < fingerHi;
+    }
+    
+    /*
+     * Called for a key outside the finger's range in finger mode:
+     * returns true if the finger should be moved near it, because there
+     * is no finger, or because the key is within the finger's width of
+     * its range or of the previous key outside it.
+     */
+    private boolean moveFinger(int key) {
+        boolean near = finger == null || fingerWidth == Long.MAX_VALUE
+                       || (key > fingerLo - fingerWidth && key < fingerHi + fingerWidth)
+                       || Math.abs(key - fingerMiss) < fingerWidth;
+        fingerMiss = key;
+        return near;
+    }
+    
+    /*
+     * Moves the finger near n, the last node visited by a search or
+     * insert: to the lowest ancestor of n's successor whose subtree has
+     * at least FINGER_SIZE nodes (or the root, in a smaller tree). If n
+     * has a right subtree, the successor is in it, and starting from
+     * there keeps the finger low even when n is high in the tree, as
+     * the key that ends a sorted run of lookups in the finger usually is.
+     * The finger's range is bounded by the nearest ancestors above it
+     * that it is in the right and the left subtree of.
+     */
+    private void placeFinger(Node n) {
+        if (n.right != null) {
+            n = n.right;
+            while (n.left != null) {
+                n = n.left;
+            }
+        }
+        while (n.parent != null && n.size < FINGER_SIZE) {
+            n = n.parent;
+        }
+        
+        long lo = Long.MIN_VALUE;
+        long hi = Long.MAX_VALUE;
+        Node child = n;
+        Node p = n.parent;
+        while (p != null && (lo == Long.MIN_VALUE || hi == Long.MAX_VALUE)) {
+            if (p.left == child) {
+                hi = Math.min(hi, p.key);
+            } else {
+                lo = Math.max(lo, p.key);
+            }
+            child = p;
+            p = p.parent;
+        }
+        finger = n;
+        fingerLo = lo;
+        fingerHi = hi;
+        boolean bounded = lo != Long.MIN_VALUE && hi != Long.MAX_VALUE;
+        fingerWidth = bounded ? hi - lo : Long.MAX_VALUE;
+    }
+    
+    /*
+     * Returns the node with the key in the subtree rooted at n, or the
+     * last node visited if the key is missing.
+     */
+    private static Node descend(Node n, int key) {
+        while (key != n.key) {
+            Node next = (key < n.key) ? n.left : n.right;
+            if (next == null) {
+                break;
+            }
+            n = next;
+        }
+        return n;
+    }
+    
+    /*
+     * Searches for the key in finger mode: from the finger if the key is
+     * in its range, and otherwise from the root, moving the finger if
+     * moveFinger says so.
+     */
+    private Node fingerSearch(int key) {
+        if (inFinger(key)) {
+            return searchTree(finger, key);
+        }
+        Node n = searchTree(root, key);
+        if (moveFinger(key) && root != null) {
+            // For a missing key, find the last node visited, which is
+            // only needed here.
+            placeFinger((n != null) ? n : descend(root, key));
+        }
+        return n;
+    }
+    
+    /*
+     * Turns splay mode on or off. In splay mode, search, insert, delete
+     * and deleteMax finish by "splaying": a series of rotations that
+     * brings the node they accessed (or, for a deletion, the parent of
+     * the node removed) to the root. Keys that are accessed often thus
+     * stay near the root, which suits skewed workloads, and any sequence
+     * of m operations takes O(m log n) time. The rotations maintain the
+     * parent references, so the iterators work as usual. A balanced
+     * tree can't also splay.
+     */
+    public void setSplaying(boolean on) {
+        if (on && balanced) {
+            throw new IllegalStateException("a balanced tree can't also splay");
+        }
+        splaying = on;
+    }
+    
+    /*
+     * Brings n to the root with splay rotations. When n and its parent
+     * are both left children or both right children (zig-zig), the
+     * grandparent is rotated first; otherwise (zig-zag) n is rotated up
+     * twice. A node whose parent is the root takes a single rotation.
+     */
+    private void splay(Node n) {
+        while (n.parent != null) {
+            Node parent = n.parent;
+            Node grandparent = parent.parent;
+            if (grandparent == null) {
+                rotateUp(n);
+            } else if ((parent.left == n) == (grandparent.left == parent)) {
+                rotateUp(parent);
+                rotateUp(n);
+            } else {
+                rotateUp(n);
+                rotateUp(n);
+            }
+        }
+    }
+    
+    /* Rotates n above its parent. */
+    private void rotateUp(Node n) {
+        if (n.parent.left == n) {
+            rotateRight(n.parent);
         } else {
-            return searchTree(root.right, key);
+            rotateLeft(n.parent);
+        }
+    }
+    
+    /*
+     * Searches for the key in splay mode, and splays the node found (or
+     * the last node visited, if the key is missing).
+     */
+    private Node splaySearch(int key) {
+        Node last = null;
+        Node trav = root;
+        while (trav != null && trav.key != key) {
+            last = trav;
+            trav = (key < trav.key) ? trav.left : trav.right;
+        }
+        
+        if (trav != null) {
+            splay(trav);
+        } else if (last != null) {
+            splay(last);
         }
+        return trav;
     }
     
     /*
@@ -249,12 +939,36 @@ public class LinkedTree {
      * tree remains a binary search tree.
      */
     public void insert(int key, Object data) {
+        if (metrics == null) {
+            add(key, data);
+            return;
+        }
+        int comparisons = pathLength(key);
+        int oldSize = sizeOf(root);
+        long start = System.nanoTime();
+        add(key, data);
+        metrics.record(LinkedTreeMetrics.INSERT, key, comparisons, sizeOf(root) == oldSize, start);
+    }
+    
+    /* Performs an insertion, in whichever mode the tree is in. */
+    private void add(int key, Object data) {
         // Find the parent of the new node.
         Node parent = null;
-        Node trav = root;
+        // In finger mode, start from the finger if it covers the key,
+        // and otherwise decide now whether to move it here. A rotation
+        // below also forgets the finger, which is then placed again.
+        boolean fromFinger = fingering && inFinger(key);
+        boolean place = fingering && !fromFinger && moveFinger(key);
+        Node trav = fromFinger ? finger : root;
         while (trav != null) {
             if (trav.key == key) {
                 trav.data.addItem(data, 0);
+                if (splaying) {
+                    splay(trav);
+                }
+                if (place || (fingering && finger == null)) {
+                    placeFinger(trav);
+                }
                 return;
             }
             parent = trav;
@@ -276,6 +990,16 @@ public class LinkedTree {
             parent.right = newNode;
             newNode.parent = parent;    //MAINTAINING THE PARENT REFERENCEe
         }
+        adjustSizes(parent, 1);
+        
+        if (balanced) {
+            rebalance(parent);
+        } else if (splaying) {
+            splay(newNode);
+        }
+        if (place || (fingering && finger == null)) {
+            placeFinger(newNode);
+        }
     }
     
     /*
@@ -293,7 +1017,19 @@ public class LinkedTree {
      * Deletes the node containing the (key, data) pair with the
      * specified key from the tree and return the associated data item.
      */
-    public LLList delete(int key) {
+    public List delete(int key) {
+        if (metrics == null) {
+            return remove(key);
+        }
+        int comparisons = pathLength(key);
+        long start = System.nanoTime();
+        List removedData = remove(key);
+        metrics.record(LinkedTreeMetrics.DELETE, key, comparisons, removedData != null, start);
+        return removedData;
+    }
+    
+    /* Performs a deletion, in whichever mode the tree is in. */
+    private List remove(int key) {
         // Find the node to be deleted and its parent.
         Node parent = null;
         Node trav = root;
@@ -310,7 +1046,7 @@ public class LinkedTree {
         if (trav == null) {   // no such key    
             return null;
         } else {
-            LLList removedData = trav.data;
+            List removedData = trav.data;
             deleteNode(trav, parent);
             return removedData;
         }
@@ -351,18 +1087,323 @@ public class LinkedTree {
             } else {
                 toDeleteChild = toDelete.right;  // null if it has no children
             }
-            
-            if (toDelete == root) {
-                root = toDeleteChild;
-                root.parent = null;         //MAINTAINING THE PARENT REFERENCE
-            } else if (toDelete.key < parent.key) {
-                parent.left = toDeleteChild;
-                toDeleteChild.parent = parent;      //MAINTAINING THE PARENT REFERENCEE
-            } else {
-                parent.right = toDeleteChild;
-                toDeleteChild.parent = parent;      //MAINTAINING THE PARENT REFERENCE
+            
+            if (toDelete == root) {
+                root = toDeleteChild;
+            } else if (parent.left == toDelete) {
+                parent.left = toDeleteChild;
+            } else {
+                parent.right = toDeleteChild;
+            }
+            
+            //MAINTAINING THE PARENT REFERENCE
+            if (toDeleteChild != null) {
+                toDeleteChild.parent = parent;
+            }
+            adjustSizes(parent, -1);
+            finger = null;
+            
+            if (balanced) {
+                rebalance(parent);
+            } else if (splaying && parent != null) {
+                splay(parent);
+            }
+        }
+    }
+    
+    /*
+     * Returns the height of the specified subtree, or -1 if it is empty.
+     * Only meaningful in balanced mode, where the heights are maintained.
+     */
+    private static int heightOf(Node n) {
+        return (n == null) ? -1 : n.height;
+    }
+    
+    /* Returns the # of nodes in the specified subtree. */
+    private static int sizeOf(Node n) {
+        return (n == null) ? 0 : n.size;
+    }
+    
+    /* Recomputes the height and size of n from those of its children. */
+    private static void updateNode(Node n) {
+        n.height = 1 + Math.max(heightOf(n.left), heightOf(n.right));
+        n.size = 1 + sizeOf(n.left) + sizeOf(n.right);
+    }
+    
+    /* Adds delta to the sizes of n and all of its ancestors. */
+    private static void adjustSizes(Node n, int delta) {
+        while (n != null) {
+            n.size += delta;
+            n = n.parent;
+        }
+    }
+    
+    /*
+     * Makes newChild take the place of oldChild below parent (or at
+     * the root of the tree, if parent is null).
+     */
+    private void replaceChild(Node parent, Node oldChild, Node newChild) {
+        if (parent == null) {
+            root = newChild;
+        } else if (parent.left == oldChild) {
+            parent.left = newChild;
+        } else {
+            parent.right = newChild;
+        }
+        if (newChild != null) {
+            newChild.parent = parent;
+        }
+    }
+    
+    /*
+     * Rotates the subtree rooted at n to the left, and returns the
+     * new root of the subtree (n's former right child).
+     */
+    private Node rotateLeft(Node n) {
+        Node r = n.right;
+        replaceChild(n.parent, n, r);
+        n.right = r.left;
+        if (r.left != null) {
+            r.left.parent = n;
+        }
+        r.left = n;
+        n.parent = r;
+        
+        updateNode(n);
+        updateNode(r);
+        rotations++;
+        finger = null;
+        return r;
+    }
+    
+    /*
+     * Rotates the subtree rooted at n to the right, and returns the
+     * new root of the subtree (n's former left child).
+     */
+    private Node rotateRight(Node n) {
+        Node l = n.left;
+        replaceChild(n.parent, n, l);
+        n.left = l.right;
+        if (l.right != null) {
+            l.right.parent = n;
+        }
+        l.right = n;
+        n.parent = l;
+        
+        updateNode(n);
+        updateNode(l);
+        rotations++;
+        finger = null;
+        return l;
+    }
+    
+    /*
+     * Walks from n up to the root, updating the heights of the nodes
+     * along the way and performing the AVL rotations needed to restore
+     * the balance of any node whose subtrees differ in height by 2.
+     */
+    private void rebalance(Node n) {
+        while (n != null) {
+            updateNode(n);
+            int balance = heightOf(n.left) - heightOf(n.right);
+            
+            if (balance > 1) {
+                // left-right case: first turn it into a left-left case
+                if (heightOf(n.left.left) < heightOf(n.left.right)) {
+                    rotateLeft(n.left);
+                }
+                n = rotateRight(n);
+            } else if (balance < -1) {
+                // right-left case: first turn it into a right-right case
+                if (heightOf(n.right.right) < heightOf(n.right.left)) {
+                    rotateRight(n.right);
+                }
+                n = rotateLeft(n);
+            }
+            
+            n = n.parent;
+        }
+    }
+    
+    /*
+     * Returns the height of the tree (-1 if it is empty). In balanced
+     * mode this is read off the root; otherwise the tree is traversed.
+     */
+    public int height() {
+        if (balanced) {
+            return heightOf(root);
+        }
+        
+        // Count the levels of a level-order traversal, so that a
+        // degenerate tree doesn't overflow the stack.
+        int[] height = {-1};
+        levelOrder(new LevelOrderVisitor() {
+            public void visit(int key, int level) {
+            }
+            
+            public void endOfLevel(int level) {
+                height[0] = level;
+            }
+        });
+        return height[0];
+    }
+    
+    /* Returns the # of keys in the tree. */
+    public int size() {
+        return sizeOf(root);
+    }
+    
+    /*
+     * Returns the # of keys in the tree that are smaller than the
+     * specified key (or smaller than or equal to it, if inclusive is
+     * true), using the subtree sizes to skip over whole left subtrees.
+     */
+    private int countBelow(int key, boolean inclusive) {
+        int count = 0;
+        Node trav = root;
+        while (trav != null) {
+            if (key < trav.key || (key == trav.key && !inclusive)) {
+                trav = trav.left;
+            } else {
+                count += sizeOf(trav.left) + 1;
+                trav = trav.right;
+            }
+        }
+        return count;
+    }
+    
+    /*
+     * Returns the rank of the specified key: the # of keys in the tree
+     * that are smaller than it. The key itself need not be in the tree.
+     */
+    public int rank(int key) {
+        return countBelow(key, false);
+    }
+    
+    /*
+     * Returns the kth smallest key in the tree, counting from 0, so
+     * that select(rank(key)) == key for every key in the tree.
+     * Throws an IndexOutOfBoundsException if k < 0 or k >= size().
+     */
+    public int select(int k) {
+        if (k < 0 || k >= size()) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        Node trav = root;
+        while (true) {
+            int leftSize = sizeOf(trav.left);
+            if (k < leftSize) {
+                trav = trav.left;
+            } else if (k == leftSize) {
+                return trav.key;
+            } else {
+                k -= leftSize + 1;
+                trav = trav.right;
+            }
+        }
+    }
+    
+    /*
+     * Returns the # of keys k in the tree with lo <= k <= hi.
+     */
+    public int countInRange(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return countBelow(hi, true) - countBelow(lo, false);
+    }
+    
+    /*
+     * Checks the structure of the tree: that the keys are in BST order,
+     * that every child's parent reference points back to its parent,
+     * and that the subtree sizes (and, in balanced mode, the heights
+     * and AVL balance) are correct. Returns true if they all hold.
+     */
+    public boolean isValid() {
+        if (root == null) {
+            return true;
+        }
+        if (root.parent != null) {
+            return false;
+        }
+        
+        // Check each node against its children, level by level.
+        NodeRing q = new NodeRing();
+        q.insert(root);
+        while (!q.isEmpty()) {
+            Node n = q.remove();
+            if (n.size != 1 + sizeOf(n.left) + sizeOf(n.right)) {
+                return false;
+            }
+            if (balanced) {
+                int balance = heightOf(n.left) - heightOf(n.right);
+                if (n.height != 1 + Math.max(heightOf(n.left), heightOf(n.right))
+                    || balance > 1 || balance < -1) {
+                    return false;
+                }
+            }
+            if (n.left != null) {
+                if (n.left.parent != n || n.left.key >= n.key) {
+                    return false;
+                }
+                q.insert(n.left);
+            }
+            if (n.right != null) {
+                if (n.right.parent != n || n.right.key <= n.key) {
+                    return false;
+                }
+                q.insert(n.right);
             }
         }
+        
+        // The local checks and an ascending inorder walk (which also
+        // relies on the parent references) give the BST property.
+        LinkedTreeIterator iter = inorderIterator();
+        int count = 1;
+        int prev = iter.next();
+        while (iter.hasNext()) {
+            int key = iter.next();
+            if (key <= prev) {
+                return false;
+            }
+            prev = key;
+            count++;
+        }
+        return count == root.size;
+    }
+    
+    /*
+     * Returns a read-only copy of the tree that is laid out in a single
+     * array for faster searching (see FrozenLinkedTree). The data lists
+     * are shared, so the tree should not be modified afterwards.
+     */
+    public FrozenLinkedTree freeze() {
+        return new FrozenLinkedTree(this);
+    }
+    
+    /*
+     * Writes the keys and data items of the tree to the specified file
+     * in a compact binary format (see MappedLinkedTree). Data items
+     * other than strings, integers and null must be Serializable.
+     */
+    public void save(Path path) throws IOException {
+        MappedLinkedTree.save(this, path);
+    }
+    
+    /*
+     * Opens a tree that was written with save. The keys are memory-mapped
+     * and the data is only read when it is searched for, so the tree
+     * can be used right away; use MappedLinkedTree.toLinkedTree to get a
+     * modifiable copy.
+     */
+    public static MappedLinkedTree open(Path path) throws IOException {
+        return MappedLinkedTree.open(path);
+    }
+    
+    /* Returns the # of rotations performed so far in balanced or splay mode. */
+    public long rotations() {
+        return rotations;
     }
     
     /* Returns a preorder iterator for this tree. */
@@ -435,7 +1476,7 @@ public class LinkedTree {
         private InorderIterator () {  
             nextNode = root;
 
-            while (nextNode.left != null) {
+            while (nextNode != null && nextNode.left != null) {
                 nextNode = nextNode.left;
             }
         }
@@ -449,42 +1490,326 @@ public class LinkedTree {
                 throw new NoSuchElementException();
             }
 
+            int key = nextNode.key;
+
+            //Advance nextNode
+            nextNode = successor(nextNode);
+
+            return key;
             
+        }
 
+    }
 
-            int key = nextNode.key;
+    /*
+     * Returns the node that follows n in an inorder traversal, or null
+     * if n is the last one.
+     */
+    private static Node successor(Node n) {
+        if (n.right != null) {
+            n = n.right;
+            
+            //Re-initializing the first node, for every new root
+            while (n.left != null) {
+                n = n.left;
+            }
+            return n;
+        }
 
-            //Advance nextNode
-            if (nextNode.right != null) {
+        Node parent = n.parent;
+        Node child = n;
+        while (parent != null &&
+               (parent.right == child)) {
+            child = parent;
+            parent = parent.parent;
+        }
+        return parent;    // null if the traversal is complete
+    }
 
-                nextNode = nextNode.right;
-                
-                //Re-initializing the first node, for every new root
-                while (nextNode.left != null) {
-                    nextNode = nextNode.left;
-                }
+    /*
+     * Returns the node that precedes n in an inorder traversal, or null
+     * if n is the first one.
+     */
+    private static Node predecessor(Node n) {
+        if (n.left != null) {
+            n = n.left;
+            while (n.right != null) {
+                n = n.right;
             }
-            else {
-                Node parent = nextNode.parent;
-                Node child = nextNode;
-                while (parent != null &&
-                       (parent.right == child)) {
-                    child = parent;
-                    parent = parent.parent;
+            return n;
+        }
+
+        Node parent = n.parent;
+        Node child = n;
+        while (parent != null &&
+               (parent.left == child)) {
+            child = parent;
+            parent = parent.parent;
+        }
+        return parent;
+    }
+
+    /* Returns the node with the smallest key >= key, or null if none. */
+    private Node ceilingNode(int key) {
+        Node ceiling = null;
+        Node trav = root;
+        while (trav != null) {
+            if (key == trav.key) {
+                return trav;
+            } else if (key < trav.key) {
+                ceiling = trav;
+                trav = trav.left;
+            } else {
+                trav = trav.right;
+            }
+        }
+        return ceiling;
+    }
+
+    /* Returns the node with the largest key <= key, or null if none. */
+    private Node floorNode(int key) {
+        Node floor = null;
+        Node trav = root;
+        while (trav != null) {
+            if (key == trav.key) {
+                return trav;
+            } else if (key > trav.key) {
+                floor = trav;
+                trav = trav.right;
+            } else {
+                trav = trav.left;
+            }
+        }
+        return floor;
+    }
+
+    /*
+     * Returns an inorder iterator that starts at the smallest key
+     * >= fromKey, rather than at the smallest key in the tree.
+     */
+    public LinkedTreeRangeIterator inorderIterator(int fromKey) {
+        return new RangeIterator(false, fromKey, Integer.MAX_VALUE);
+    }
+
+    /* Returns an iterator that visits the keys in descending order. */
+    public LinkedTreeRangeIterator descendingIterator() {
+        return descendingIterator(Integer.MAX_VALUE);
+    }
+
+    /*
+     * Returns an iterator that visits the keys in descending order,
+     * starting at the largest key <= fromKey.
+     */
+    public LinkedTreeRangeIterator descendingIterator(int fromKey) {
+        return new RangeIterator(true, fromKey, Integer.MIN_VALUE);
+    }
+
+    /*
+     * Returns an iterator over the keys k with lo <= k <= hi, in
+     * ascending order, together with their data lists. The nodes are
+     * found lazily, so visiting m keys costs O(height + m).
+     */
+    public LinkedTreeRangeIterator rangeSearch(int lo, int hi) {
+        return new RangeIterator(false, lo, hi);
+    }
+
+    /*
+     * inner class for an inorder iterator that runs in either direction
+     * and stops once it passes a limit key
+     */
+    private class RangeIterator implements LinkedTreeRangeIterator {
+        private boolean descending;
+        private int limit;          // the last key that may be visited
+        private Node nextNode;
+        private Node lastNode;      // the node most recently returned
+
+        private RangeIterator(boolean descending, int fromKey, int limit) {
+            this.descending = descending;
+            this.limit = limit;
+            seek(fromKey);
+        }
+
+        public void seek(int key) {
+            nextNode = descending ? floorNode(key) : ceilingNode(key);
+            lastNode = null;
+        }
+
+        public boolean hasNext() {
+            if (nextNode == null) {
+                return false;
+            }
+            return descending ? nextNode.key >= limit
+                              : nextNode.key <= limit;
+        }
+
+        public int next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            lastNode = nextNode;
+            nextNode = descending ? predecessor(nextNode) : successor(nextNode);
+            return lastNode.key;
+        }
+
+        public List data() {
+            if (lastNode == null) {
+                throw new IllegalStateException();
+            }
+            return lastNode.data;
+        }
+    }
+    
+    /*
+     * Returns a stream of the keys in ascending order. The stream can
+     * be made parallel, in which case it is split at subtree boundaries
+     * (see SubtreeSpliterator). The tree must not be modified while the
+     * stream is in use.
+     */
+    public IntStream keys() {
+        return StreamSupport.intStream(new KeySpliterator(null, root), false);
+    }
+
+    /*
+     * Returns a stream of the (key, data list) pairs in ascending order
+     * of key, which can be split in the same way as keys().
+     */
+    public Stream<Map.Entry<Integer, List>> entries() {
+        return StreamSupport.stream(new EntrySpliterator(null, root), false);
+    }
+
+    /*
+     * A spliterator over the nodes of a subtree, optionally preceded by
+     * one other node. It splits by handing off its left part: the
+     * preceding node (if any) and the left subtree become a new
+     * spliterator, and this one keeps the root of the subtree followed
+     * by the right subtree. The subtree sizes make the estimated sizes
+     * exact. Once it has started visiting the subtree, it follows the
+     * inorder successors for the size of the subtree, and no longer splits.
+     */
+    private static abstract class SubtreeSpliterator {
+        protected Node pending;     // a node to visit before subtree
+        protected Node subtree;     // a subtree not yet started
+        protected Node cursor;      // the next node, once started
+        protected int remaining;    // # of nodes left, once started
+
+        protected SubtreeSpliterator(Node pending, Node subtree) {
+            this.pending = pending;
+            this.subtree = subtree;
+        }
+
+        /* returns the next node, or null if there are none left */
+        protected Node nextNode() {
+            if (pending != null) {
+                Node n = pending;
+                pending = null;
+                return n;
+            }
+            if (subtree != null) {
+                cursor = subtree;
+                while (cursor.left != null) {
+                    cursor = cursor.left;
                 }
+                remaining = subtree.size;
+                subtree = null;
+            }
+            if (remaining == 0) {
+                return null;
+            }
+            Node n = cursor;
+            remaining--;
+            cursor = (remaining > 0) ? successor(n) : null;
+            return n;
+        }
 
-                if (parent == null) {
-                    nextNode = null;  // the traversal is complete
-                } else {
-                    nextNode = parent;
+        /*
+         * hands off the part that comes before the root of subtree, and
+         * returns {pending, left subtree} for the new spliterator, or
+         * null if there is nothing worth splitting off
+         */
+        protected Node[] splitOff() {
+            if (subtree == null) {
+                return null;
+            }
+            if (pending == null && subtree.left == null) {
+                // Nothing comes before the root of subtree, so split its
+                // right subtree instead: hand off the root and the left
+                // subtree of its right child.
+                Node right = subtree.right;
+                if (right == null) {
+                    return null;
                 }
+                Node[] prefix = {subtree, right.left};
+                pending = right;
+                subtree = right.right;
+                return prefix;
+            }
+            Node[] prefix = {pending, subtree.left};
+            pending = subtree;
+            subtree = subtree.right;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return (pending != null ? 1 : 0) + sizeOf(subtree) + remaining;
+        }
+
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT
+                 | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL;
+        }
+    }
 
+    /* the spliterator for keys() */
+    private static class KeySpliterator extends SubtreeSpliterator
+      implements Spliterator.OfInt {
+        private KeySpliterator(Node pending, Node subtree) {
+            super(pending, subtree);
+        }
+
+        public boolean tryAdvance(IntConsumer action) {
+            Node n = nextNode();
+            if (n == null) {
+                return false;
             }
+            action.accept(n.key);
+            return true;
+        }
 
-            return key;
-            
+        public Spliterator.OfInt trySplit() {
+            Node[] prefix = splitOff();
+            return (prefix == null) ? null : new KeySpliterator(prefix[0], prefix[1]);
+        }
+
+        public Comparator<? super Integer> getComparator() {
+            return null;     // the keys are in their natural order
+        }
+    }
+
+    /* the spliterator for entries() */
+    private static class EntrySpliterator extends SubtreeSpliterator
+      implements Spliterator<Map.Entry<Integer, List>> {
+        private EntrySpliterator(Node pending, Node subtree) {
+            super(pending, subtree);
+        }
+
+        public boolean tryAdvance(Consumer<? super Map.Entry<Integer, List>> action) {
+            Node n = nextNode();
+            if (n == null) {
+                return false;
+            }
+            action.accept(new AbstractMap.SimpleImmutableEntry<Integer, List>(n.key, n.data));
+            return true;
+        }
+
+        public Spliterator<Map.Entry<Integer, List>> trySplit() {
+            Node[] prefix = splitOff();
+            return (prefix == null) ? null : new EntrySpliterator(prefix[0], prefix[1]);
         }
 
+        public Comparator<? super Map.Entry<Integer, List>> getComparator() {
+            return Map.Entry.comparingByKey();
+        }
     }
     
     /*
@@ -543,31 +1868,136 @@ public class LinkedTree {
         return -1;
     }
 
-    public int sumEvens () {
+    /*
+     * Returns the sum of the even keys in the tree, as a long so that
+     * the sum doesn't overflow. Built on top of aggregate, so it runs
+     * in parallel on large trees.
+     */
+    public long sumEvens () {
         /*If the tree is empty, the result should be zero */
-        int sum = 0;
+        return sum(key -> key % 2 == 0);
+    }
 
-        /*If the tree is non empty, we call sumEvensInTree recursively */
-        if (root != null) {
-            sum = sumEvensInTree(root);
+    /* Returns the sum of the keys that satisfy the filter. */
+    public long sum(IntPredicate filter) {
+        return aggregate(filter, key -> key, 0, Long::sum);
+    }
+
+    /* Returns the # of keys that satisfy the filter. */
+    public long count(IntPredicate filter) {
+        return aggregate(filter, key -> 1, 0, Long::sum);
+    }
+
+    /*
+     * Combines the keys that satisfy the filter: each of them is turned
+     * into a long by mapper, and the results are combined with reducer,
+     * starting from identity. For example, the largest even key is
+     *
+     *     aggregate(key -> key % 2 == 0, key -> key, Long.MIN_VALUE, Math::max)
+     *
+     * The reducer must be associative and identity must be its identity
+     * element, because subtrees with at least PARALLEL_AGGREGATE_THRESHOLD
+     * nodes are aggregated in parallel as ForkJoin tasks. Smaller
+     * subtrees are aggregated with an iterative loop.
+     */
+    public long aggregate(IntPredicate filter, IntToLongFunction mapper,
+                          long identity, LongBinaryOperator reducer) {
+        if (root == null) {
+            return identity;
+        }
+        if (root.size < PARALLEL_AGGREGATE_THRESHOLD) {
+            return aggregateSubtree(root, filter, mapper, identity, reducer);
         }
-        return sum;
+        return ForkJoinPool.commonPool().invoke(
+          new AggregateTask(root, 0, filter, mapper, identity, reducer));
     }
 
-    private static int sumEvensInTree (Node root) {
-        int sum = 0;
-        if (root.key % 2 == 0) {
-            sum = sum + root.key;
+    // subtrees with at least this many nodes are aggregated in parallel
+    private static final int PARALLEL_AGGREGATE_THRESHOLD = 1 << 14;
+
+    // tasks this deep in the tree aggregate their subtrees iteratively,
+    // so an unbalanced tree can't make the tasks recurse too deeply
+    private static final int MAX_AGGREGATE_TASK_DEPTH = 64;
+
+    /*
+     * Aggregates the subtree rooted at top without recursion: it starts
+     * at the smallest key in the subtree and follows the inorder
+     * successors, which stay within the subtree for top.size nodes.
+     */
+    private static long aggregateSubtree(Node top, IntPredicate filter,
+      IntToLongFunction mapper, long identity, LongBinaryOperator reducer) {
+        long result = identity;
+        Node trav = top;
+        while (trav.left != null) {
+            trav = trav.left;
         }
+        for (int i = 0; i < top.size; i++) {
+            if (filter.test(trav.key)) {
+                result = reducer.applyAsLong(result, mapper.applyAsLong(trav.key));
+            }
+            trav = successor(trav);
+        }
+        return result;
+    }
 
-        if (root.left != null) {
-            sum = sum + sumEvensInTree(root.left);
+    /*
+     * A ForkJoin task that aggregates a subtree, forking a task for the
+     * left subtree and aggregating the right subtree in the current thread.
+     * A task at depth MAX_AGGREGATE_TASK_DEPTH or more -- which only
+     * happens in an unbalanced tree -- aggregates its whole subtree with
+     * the iterative loop instead.
+     */
+    private static class AggregateTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private Node top;
+        private int depth;
+        private IntPredicate filter;
+        private IntToLongFunction mapper;
+        private long identity;
+        private LongBinaryOperator reducer;
+
+        private AggregateTask(Node top, int depth, IntPredicate filter,
+          IntToLongFunction mapper, long identity, LongBinaryOperator reducer) {
+            this.top = top;
+            this.depth = depth;
+            this.filter = filter;
+            this.mapper = mapper;
+            this.identity = identity;
+            this.reducer = reducer;
         }
 
-        if (root.right != null) {
-            sum = sum + sumEvensInTree(root.right);
+        /* returns a task for the child n, or null if there is no child */
+        private AggregateTask child(Node n) {
+            if (n == null) {
+                return null;
+            }
+            return new AggregateTask(n, depth + 1, filter, mapper, identity, reducer);
+        }
+
+        /* aggregates the child n in the current thread */
+        private long aggregate(Node n) {
+            AggregateTask task = child(n);
+            return (task == null) ? identity : task.compute();
+        }
+
+        protected Long compute() {
+            if (top.size < PARALLEL_AGGREGATE_THRESHOLD
+                  || depth >= MAX_AGGREGATE_TASK_DEPTH) {
+                return aggregateSubtree(top, filter, mapper, identity, reducer);
+            }
+
+            AggregateTask leftTask = child(top.left);
+            if (leftTask != null) {
+                leftTask.fork();
+            }
+            long result = aggregate(top.right);
+            if (filter.test(top.key)) {
+                result = reducer.applyAsLong(mapper.applyAsLong(top.key), result);
+            }
+            long left = (leftTask == null) ? identity : leftTask.join();
+            return reducer.applyAsLong(left, result);
         }
-        return sum;
     }
 
     public int depthIter (int key) {
@@ -603,7 +2033,24 @@ public class LinkedTree {
         return -1;
     }
 
+    /*
+     * Removes the node with the largest key and returns that key,
+     * or -1 if the tree is empty.
+     */
     public int deleteMax() {
+        if (metrics == null) {
+            return removeMax();
+        }
+        int comparisons = pathLength(Integer.MAX_VALUE);
+        boolean found = (root != null);
+        long start = System.nanoTime();
+        int max = removeMax();
+        metrics.record(LinkedTreeMetrics.DELETE, max, comparisons, found, start);
+        return max;
+    }
+    
+    /* Removes the node with the largest key (see deleteMax). */
+    private int removeMax() {
         if (root == null) {
             return -1;
         }
@@ -618,26 +2065,9 @@ public class LinkedTree {
 
         int max = trav.key;
 
-        if (parent == null && trav.left == null) {
-            /*The root of the node is the Maximum and has no children*/
-            root = null;
-            return -1;
-        }
-        if (parent != null && trav.left != null) {
-            /*The maximum has a left */
-            parent.right = trav.left;
-        }
-        else if (parent == null && trav.left != null) {
-            /*The root is the maximum, and only has a left subtree */
-            root = trav.left;
-        }
-        else if (trav.left == null) {
-            /*The max is a Leaf node */
-            parent.right = null;
-        }
-        // else {
-        //     parent.right = trav.left;
-        // }
+        /*The max has no right child, so deleteNode splices in its left
+          subtree (if any) and maintains the parent references */
+        deleteNode(trav, parent);
 
         return max;
 
@@ -676,7 +2106,7 @@ public class LinkedTree {
             System.out.println("Newly created tree, with keys being the integers from 1 to 6, inclusive, printed in levelOrder");
             tree611.levelOrderPrint();
             
-            int results611 = tree611.sumEvens();
+            long results611 = tree611.sumEvens();
             System.out.println("Actual Results: ");
             System.out.println(results611);
             System.out.println("Expected Results: ");
@@ -693,7 +2123,7 @@ public class LinkedTree {
             System.out.println("Newly created random tree, printed in levelOrder");
             tree612.levelOrderPrint();
 
-            int results612 = tree612.sumEvens();
+            long results612 = tree612.sumEvens();
             System.out.println("Actual Results: ");
             System.out.println(results612);
             System.out.println("Expected Results: ");
@@ -848,6 +2278,422 @@ public class LinkedTree {
                 System.out.println("The key is: " + key);
             }        
 
+            System.out.println("\n\nBalanced mode TEST 1 BEGIN --------------------------------");
+            System.out.println("Inserting the keys 1..1000 in ascending order\n");
+            LinkedTree plain901 = new LinkedTree();
+            LinkedTree tree901 = new LinkedTree(true);
+            for (int i = 1; i <= 1000; i++) {
+                plain901.insert(i, "d" + i);
+                tree901.insert(i, "d" + i);
+            }
+            System.out.println("plain height: " + plain901.height() + " , Expected : " + 999 + ", Match? " + (plain901.height() == 999));
+            System.out.println("balanced height: " + tree901.height() + " , Expected : <= 14, Match? " + (tree901.height() <= 14));
+            System.out.println("rotations: " + tree901.rotations());
+
+            System.out.println("\n\nBalanced mode TEST 2 BEGIN --------------------------------");
+            System.out.println("Deleting every even key and then the max, then walking the tree with the inorder iterator\n");
+            for (int i = 2; i <= 1000; i += 2) {
+                tree901.delete(i);
+            }
+            int max902 = tree901.deleteMax();
+            System.out.println("deleteMax: " + max902 + " , Expected : " + 999 + ", Match? " + (max902 == 999));
+            max902 = tree901.deleteMax();
+            System.out.println("deleteMax: " + max902 + " , Expected : " + 997 + ", Match? " + (max902 == 997));
+            boolean inorder902 = true;
+            int expected902 = 1;
+            LinkedTreeIterator iter902 = tree901.inorderIterator();
+            while (iter902.hasNext()) {
+                inorder902 = inorder902 && (iter902.next() == expected902);
+                expected902 += 2;
+            }
+            inorder902 = inorder902 && (expected902 == 997);
+            System.out.println("inorder iteration gives 1, 3, ..., 995? " + inorder902);
+            System.out.println("balanced height: " + tree901.height() + " , Expected : <= 12, Match? " + (tree901.height() <= 12));
+
+            System.out.println("\n\nOrder statistics TEST 1 BEGIN --------------------------------");
+            LinkedTree tree921 = new LinkedTree();
+            int[] keys921 = {37, 26, 42, 13, 35, 56, 30, 47, 70};
+            tree921.insertKeys(keys921);
+            tree921.levelOrderPrint();
+            System.out.println("size: " + tree921.size() + " , Expected : " + 9 + ", Match? " + (tree921.size() == 9));
+            System.out.println("rank(35): " + tree921.rank(35) + " , Expected : " + 3 + ", Match? " + (tree921.rank(35) == 3));
+            System.out.println("rank(50): " + tree921.rank(50) + " , Expected : " + 7 + ", Match? " + (tree921.rank(50) == 7));
+            System.out.println("select(0): " + tree921.select(0) + " , Expected : " + 13 + ", Match? " + (tree921.select(0) == 13));
+            System.out.println("select(6): " + tree921.select(6) + " , Expected : " + 47 + ", Match? " + (tree921.select(6) == 47));
+            System.out.println("countInRange(30, 47): " + tree921.countInRange(30, 47) + " , Expected : " + 5 + ", Match? " + (tree921.countInRange(30, 47) == 5));
+
+            System.out.println("\n\nOrder statistics TEST 2 BEGIN --------------------------------");
+            System.out.println("After delete(37), delete(13) and deleteMax()");
+            tree921.delete(37);
+            tree921.delete(13);
+            tree921.deleteMax();
+            tree921.levelOrderPrint();
+            System.out.println("size: " + tree921.size() + " , Expected : " + 6 + ", Match? " + (tree921.size() == 6));
+            System.out.println("rank(42): " + tree921.rank(42) + " , Expected : " + 3 + ", Match? " + (tree921.rank(42) == 3));
+            System.out.println("select(5): " + tree921.select(5) + " , Expected : " + 56 + ", Match? " + (tree921.select(5) == 56));
+            System.out.println("countInRange(0, 100): " + tree921.countInRange(0, 100) + " , Expected : " + 6 + ", Match? " + (tree921.countInRange(0, 100) == 6));
+            boolean select922 = true;
+            for (int k = 0; k < tree901.size(); k++) {
+                select922 = select922 && (tree901.rank(tree901.select(k)) == k);
+            }
+            System.out.println("rank(select(k)) == k on the balanced tree from above? " + select922);
+
+            System.out.println("\n\nRange query TEST 1 BEGIN --------------------------------");
+            LinkedTree tree931 = new LinkedTree();
+            int[] keys931 = {37, 26, 42, 13, 35, 56, 30, 47, 70};
+            tree931.insertKeys(keys931);
+            System.out.println("rangeSearch(30, 50):");
+            LinkedTreeRangeIterator iter931 = tree931.rangeSearch(30, 50);
+            String results931 = "";
+            while (iter931.hasNext()) {
+                int key = iter931.next();
+                System.out.println("The key is: " + key + ", data: " + iter931.data());
+                results931 = results931 + key + " ";
+            }
+            System.out.println("Match? " + results931.equals("30 35 37 42 47 "));
+
+            System.out.println("\n\nRange query TEST 2 BEGIN --------------------------------");
+            System.out.println("descendingIterator(45), then seek(14) and take one key");
+            LinkedTreeRangeIterator iter932 = tree931.descendingIterator(45);
+            String results932 = "";
+            while (iter932.hasNext()) {
+                results932 = results932 + iter932.next() + " ";
+            }
+            iter932.seek(14);
+            results932 = results932 + "| " + iter932.next() + " ";
+            results932 = results932 + iter932.hasNext();
+            System.out.println("Actual Results: " + results932);
+            System.out.println("Expected Results: 42 37 35 30 26 13 | 13 false");
+            System.out.println("Match? " + results932.equals("42 37 35 30 26 13 | 13 false"));
+            LinkedTreeRangeIterator iter933 = tree931.inorderIterator(57);
+            System.out.println("inorderIterator(57).next(): " + iter933.next() + " , Expected : 70, hasNext afterwards? " + iter933.hasNext());
+
+            System.out.println("\n\nAggregate TEST 1 BEGIN --------------------------------");
+            LinkedTree tree941 = new LinkedTree();
+            int[] keys941 = {37, 26, 42, 13, 35, 56, 30, 47, 70};
+            tree941.insertKeys(keys941);
+            long odd941 = tree941.count(key -> key % 2 != 0);
+            long max941 = tree941.aggregate(key -> key < 50, key -> key, Long.MIN_VALUE, Math::max);
+            System.out.println("count of odd keys: " + odd941 + " , Expected : " + 4 + ", Match? " + (odd941 == 4));
+            System.out.println("largest key < 50: " + max941 + " , Expected : " + 47 + ", Match? " + (max941 == 47));
+
+            System.out.println("\n\nAggregate TEST 2 BEGIN --------------------------------");
+            System.out.println("sumEvens over 1,000,000 large keys (parallel path; the sum overflows an int)\n");
+            int[] keys942 = new int[1000000];
+            Object[] dataItems942 = new Object[keys942.length];
+            long expected942 = 0;
+            for (int i = 0; i < keys942.length; i++) {
+                keys942[i] = 2000000000 - 2 * i;
+                expected942 += keys942[i];
+            }
+            LinkedTree tree942 = new LinkedTree(keys942, dataItems942);
+            long results942 = tree942.sumEvens();
+            System.out.println("Actual Results: " + results942);
+            System.out.println("Expected Results: " + expected942);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results942 == expected942);
+
+            System.out.println("\n\nAggregate TEST 3 BEGIN --------------------------------");
+            System.out.println("sumEvens over degenerate trees of 20,000 ascending and descending inserts\n");
+            LinkedTree ascending943 = new LinkedTree();
+            LinkedTree descending943 = new LinkedTree();
+            long expected943 = 0;
+            for (int i = 0; i < 20000; i++) {
+                ascending943.insert(i, null);
+                descending943.insert(19999 - i, null);
+                if (i % 2 == 0) {
+                    expected943 += i;
+                }
+            }
+            long ascendingSum943 = ascending943.sumEvens();
+            long descendingSum943 = descending943.sumEvens();
+            System.out.println("ascending: " + ascendingSum943 + ", descending: " + descendingSum943
+                               + " , Expected : " + expected943 + ", Match? "
+                               + (ascendingSum943 == expected943 && descendingSum943 == expected943));
+            LinkedTree small943 = new LinkedTree();
+            for (int i = 0; i < 16384; i++) {
+                small943.insert(i, null);
+            }
+            long smallSum943 = small943.sumEvens();
+            System.out.println("16,384 ascending inserts: " + smallSum943 + " , Expected : " + (8191L * 8192)
+                               + ", Match? " + (smallSum943 == 8191L * 8192));
+
+            System.out.println("\n\nLevel order TEST 1 BEGIN --------------------------------");
+            LinkedTree tree951 = new LinkedTree();
+            int[] keys951 = {37, 26, 42, 13, 35, 56, 30, 47, 70};
+            tree951.insertKeys(keys951);
+            tree951.levelOrderPrint();
+            final StringBuilder results951 = new StringBuilder();
+            tree951.levelOrder(new LevelOrderVisitor() {
+                public void visit(int key, int level) {
+                    results951.append(key).append(' ');
+                }
+
+                public void endOfLevel(int level) {
+                    results951.append("| ");
+                }
+            });
+            System.out.println("Actual Results: " + results951);
+            System.out.println("Expected Results: 37 | 26 42 | 13 35 56 | 30 47 70 | ");
+            System.out.println("Match? " + results951.toString().equals("37 | 26 42 | 13 35 56 | 30 47 70 | "));
+
+            System.out.println("\n\nLevel order TEST 2 BEGIN --------------------------------");
+            System.out.println("levelOrderIterator, printing key@level");
+            String results952 = "";
+            LinkedTreeLevelIterator iter952 = tree951.levelOrderIterator();
+            while (iter952.hasNext()) {
+                int key = iter952.next();
+                results952 = results952 + key + "@" + iter952.level() + " ";
+            }
+            System.out.println("Actual Results: " + results952);
+            System.out.println("Expected Results: 37@0 26@1 42@1 13@2 35@2 56@2 30@3 47@3 70@3 ");
+            System.out.println("Match? " + results952.equals("37@0 26@1 42@1 13@2 35@2 56@2 30@3 47@3 70@3 "));
+            System.out.println("empty tree has next? " + new LinkedTree().levelOrderIterator().hasNext());
+
+            System.out.println("\n\nLevel order TEST 3 BEGIN --------------------------------");
+            System.out.println("A visitor that calls height(), which traverses the tree itself");
+            final StringBuilder results953 = new StringBuilder();
+            tree951.levelOrder(new LevelOrderVisitor() {
+                public void visit(int key, int level) {
+                    results953.append(key).append('/').append(tree951.height()).append(' ');
+                }
+            });
+            String expected953 = "37/3 26/3 42/3 13/3 35/3 56/3 30/3 47/3 70/3 ";
+            System.out.println("Actual Results: " + results953);
+            System.out.println("Expected Results: " + expected953);
+            System.out.println("Match? " + results953.toString().equals(expected953));
+
+            System.out.println("\n\nStream TEST 1 BEGIN --------------------------------");
+            LinkedTree tree961 = new LinkedTree();
+            int[] keys961 = {37, 26, 42, 13, 35, 56, 30, 47, 70};
+            tree961.insertKeys(keys961);
+            String results961 = Arrays.toString(tree961.keys().toArray());
+            System.out.println("keys(): " + results961);
+            System.out.println("Match? " + results961.equals("[13, 26, 30, 35, 37, 42, 47, 56, 70]"));
+            String results962 = tree961.entries()
+              .filter(e -> e.getKey() > 45)
+              .map(e -> e.getKey() + "=" + e.getValue())
+              .collect(Collectors.joining(" "));
+            System.out.println("entries() with keys > 45: " + results962);
+            System.out.println("Match? " + results962.equals("47={data for key 47} 56={data for key 56} 70={data for key 70}"));
+
+            System.out.println("\n\nStream TEST 2 BEGIN --------------------------------");
+            System.out.println("Parallel streams over the 1,000,000-key tree from the aggregate test\n");
+            long results963 = tree942.keys().parallel().filter(key -> key % 2 == 0).asLongStream().sum();
+            System.out.println("parallel sum of even keys: " + results963 + " , Expected : " + expected942 + ", Match? " + (results963 == expected942));
+            long results964 = tree942.entries().parallel().filter(e -> e.getValue() != null).count();
+            System.out.println("parallel count of entries: " + results964 + " , Expected : " + 1000000 + ", Match? " + (results964 == 1000000));
+            int[] sorted964 = tree942.keys().parallel().toArray();
+            boolean inorder964 = sorted964.length == 1000000;
+            for (int i = 1; i < sorted964.length; i++) {
+                inorder964 = inorder964 && sorted964[i - 1] < sorted964[i];
+            }
+            System.out.println("parallel toArray keeps the keys in order? " + inorder964);
+
+            System.out.println("\n\nStream TEST 3 BEGIN --------------------------------");
+            System.out.println("Parallel streams over degenerate trees of 5000 ascending and descending keys\n");
+            LinkedTree ascending965 = new LinkedTree();
+            LinkedTree descending965 = new LinkedTree();
+            for (int i = 0; i < 5000; i++) {
+                ascending965.insert(i, null);
+                descending965.insert(4999 - i, null);
+            }
+            boolean splits965 = ascending965.keys().spliterator().trySplit() != null
+                                && descending965.keys().spliterator().trySplit() != null;
+            System.out.println("both spliterators split? " + splits965 + " , Expected : true, Match? " + splits965);
+            int[] sorted965 = ascending965.keys().parallel().toArray();
+            boolean inorder965 = Arrays.equals(sorted965, descending965.keys().parallel().toArray())
+                                 && sorted965.length == 5000;
+            for (int i = 0; i < sorted965.length; i++) {
+                inorder965 = inorder965 && sorted965[i] == i;
+            }
+            System.out.println("parallel toArray keeps the keys in order? " + inorder965 + " , Expected : true, Match? " + inorder965);
+
+            System.out.println("\n\nFinger search TEST 1 BEGIN --------------------------------");
+            LinkedTree tree971 = new LinkedTree(true);
+            tree971.setFingerSearch(true);
+            for (int i = 0; i < 1000; i += 2) {
+                tree971.insert(i, "d" + i);
+            }
+            boolean found971 = true;
+            for (int i = 0; i < 1000; i++) {
+                found971 = found971 && ((tree971.search(i) != null) == (i % 2 == 0));
+            }
+            for (int i = 999; i >= 0; i -= 3) {
+                found971 = found971 && ((tree971.search(i) != null) == (i % 2 == 0));
+            }
+            System.out.println("ascending and descending searches find exactly the even keys? " + found971);
+            System.out.println("valid tree? " + tree971.isValid());
+
+            System.out.println("\n\nFinger search TEST 2 BEGIN --------------------------------");
+            System.out.println("Random searches, inserts and deletes, checked against a plain tree");
+            LinkedTree plain972 = new LinkedTree(true);
+            for (int i = 0; i < 1000; i += 2) {
+                plain972.insert(i, "d" + i);
+            }
+            Random rand972 = new Random(972);
+            boolean same972 = true;
+            for (int i = 0; i < 20000; i++) {
+                int key = rand972.nextInt(2000);
+                int op = rand972.nextInt(3);
+                if (op == 0) {
+                    tree971.insert(key, "d" + key);
+                    plain972.insert(key, "d" + key);
+                } else if (op == 1) {
+                    same972 = same972 && ((tree971.delete(key) == null) == (plain972.delete(key) == null));
+                } else {
+                    same972 = same972 && ((tree971.search(key) == null) == (plain972.search(key) == null));
+                }
+            }
+            System.out.println("same results as the plain tree? " + same972 + ", valid tree? " + tree971.isValid());
+
+            System.out.println("\n\nSplay mode TEST 1 BEGIN --------------------------------");
+            LinkedTree tree981 = new LinkedTree();
+            tree981.setSplaying(true);
+            int[] keys981 = {37, 26, 42, 13, 35, 56, 30, 47, 70};
+            tree981.insertKeys(keys981);
+            tree981.search(35);
+            System.out.println("After search(35):");
+            tree981.levelOrderPrint();
+            System.out.println("depth of 35: " + tree981.depthIter(35) + " , Expected : " + 0 + ", Match? " + (tree981.depthIter(35) == 0));
+            tree981.search(47);
+            System.out.println("depth of 47 after search(47): " + tree981.depthIter(47) + " , Expected : " + 0 + ", Match? " + (tree981.depthIter(47) == 0));
+            System.out.println("valid tree? " + tree981.isValid());
+
+            System.out.println("\n\nSplay mode TEST 2 BEGIN --------------------------------");
+            System.out.println("Random searches, inserts and deletes, checked against a plain tree");
+            LinkedTree plain982 = new LinkedTree();
+            plain982.insertKeys(keys981);
+            Random rand982 = new Random(982);
+            boolean same982 = true;
+            for (int i = 0; i < 20000; i++) {
+                int key = rand982.nextInt(500);
+                int op = rand982.nextInt(4);
+                if (op == 0) {
+                    tree981.insert(key, "d" + key);
+                    plain982.insert(key, "d" + key);
+                } else if (op == 1) {
+                    same982 = same982 && ((tree981.delete(key) == null) == (plain982.delete(key) == null));
+                } else if (op == 2) {
+                    same982 = same982 && (tree981.deleteMax() == plain982.deleteMax());
+                } else {
+                    same982 = same982 && ((tree981.search(key) == null) == (plain982.search(key) == null));
+                }
+            }
+            System.out.println("same results as the plain tree? " + same982 + ", valid tree? " + tree981.isValid());
+
+            System.out.println("\n\nBatch search TEST 1 BEGIN --------------------------------");
+            LinkedTree tree991 = new LinkedTree();
+            tree991.insertKeys(new int[] {37, 26, 42, 13, 35, 56, 30, 47, 70});
+            int[] keys991 = {70, 5, 13, 37, 99, 13, 30};
+            List[] results991 = tree991.searchAll(keys991);
+            boolean same991 = true;
+            for (int i = 0; i < keys991.length; i++) {
+                same991 = same991 && (results991[i] == tree991.search(keys991[i]));
+            }
+            System.out.println("searchAll(70, 5, 13, 37, 99, 13, 30) matches search for each key? " + same991);
+            System.out.println("results for 5 and 99: " + results991[1] + ", " + results991[4] + " , Expected : null, null, Match? " + (results991[1] == null && results991[4] == null));
+            System.out.println("empty batch: " + tree991.searchAll(new int[0]).length + " , Expected : 0, Match? " + (tree991.searchAll(new int[0]).length == 0));
+
+            System.out.println("\n\nBatch search TEST 2 BEGIN --------------------------------");
+            System.out.println("A parallel batch of 100000 random keys, half of them in the tree");
+            Random rand992 = new Random(992);
+            int[] keys992 = new int[100000];
+            for (int i = 0; i < keys992.length; i++) {
+                keys992[i] = rand992.nextInt(200000) - 100000;
+            }
+            LinkedTree tree992 = new LinkedTree(true);
+            for (int i = -100000; i < 100000; i += 2) {
+                tree992.insert(i, "d" + i);
+            }
+            List[] results992 = tree992.searchAll(keys992);
+            boolean same992 = true;
+            for (int i = 0; i < keys992.length; i++) {
+                same992 = same992 && (results992[i] == tree992.search(keys992[i]));
+            }
+            System.out.println("matches search for each key? " + same992);
+
+            System.out.println("\n\nMetrics TEST 1 BEGIN --------------------------------");
+            LinkedTree tree1001 = new LinkedTree();
+            System.out.println("metrics while off: " + tree1001.metrics() + " , Expected : null, Match? " + (tree1001.metrics() == null));
+            tree1001.setMetrics(true);
+            tree1001.insertKeys(new int[] {37, 26, 42, 13, 35, 56, 30, 47, 70});
+            tree1001.insert(35, "another 35");
+            tree1001.search(30);
+            tree1001.search(31);
+            tree1001.delete(13);
+            tree1001.deleteMax();
+            LinkedTreeMetrics.Snapshot snap1001 = tree1001.metrics();
+            System.out.print(snap1001);
+            System.out.println("inserts: " + snap1001.count(LinkedTreeMetrics.INSERT) + " (" + snap1001.hits(LinkedTreeMetrics.INSERT) + " hit) , Expected : 10 (1 hit), Match? " + (snap1001.count(LinkedTreeMetrics.INSERT) == 10 && snap1001.hits(LinkedTreeMetrics.INSERT) == 1));
+            System.out.println("search comparisons: " + snap1001.averageComparisons(LinkedTreeMetrics.SEARCH) + " , Expected : 4.0, Match? " + (snap1001.averageComparisons(LinkedTreeMetrics.SEARCH) == 4.0));
+            System.out.println("depth histogram: " + Arrays.toString(snap1001.depthHistogram()) + " , Expected : [1, 2, 2, 2], Match? " + Arrays.equals(snap1001.depthHistogram(), new long[] {1, 2, 2, 2}));
+
+            System.out.println("\n\nMetrics TEST 2 BEGIN --------------------------------");
+            System.out.println("Sorted inserts into a plain tree show up as height drift");
+            LinkedTree tree1002 = new LinkedTree();
+            tree1002.setMetrics(true);
+            for (int i = 0; i < 1000; i++) {
+                tree1002.insert(i, null);
+            }
+            LinkedTreeMetrics.Snapshot snap1002 = tree1002.metrics();
+            System.out.println("height: " + snap1002.height() + " , Expected : 999, Match? " + (snap1002.height() == 999));
+            System.out.println("insert comparisons: " + snap1002.averageComparisons(LinkedTreeMetrics.INSERT) + " , Expected : 499.5, Match? " + (snap1002.averageComparisons(LinkedTreeMetrics.INSERT) == 499.5));
+            tree1002.setMetrics(false);
+            System.out.println("metrics after turning them off: " + tree1002.metrics() + " , Expected : null, Match? " + (tree1002.metrics() == null));
+
+            System.out.println("\n\nBulk load TEST 1 BEGIN --------------------------------");
+            System.out.println("Building a tree from arrays with duplicate keys\n");
+            int[] keys911 = {5, 3, 8, 3, 5, 1, 5};
+            String[] dataItems911 = {"a", "b", "c", "d", "e", "f", "g"};
+            LinkedTree tree911 = new LinkedTree(keys911, dataItems911);
+            tree911.levelOrderPrint();
+            System.out.println("data for 5: " + tree911.search(5) + " , Expected : 3 items (a, e, g), Match? " + (tree911.search(5).length() == 3));
+            System.out.println("data for 3: " + tree911.search(3) + " , Expected : 2 items (b, d), Match? " + (tree911.search(3).length() == 2));
+
+            System.out.println("\n\nBulk load TEST 2 BEGIN --------------------------------");
+            System.out.println("Building a tree from 1,000,000 shuffled keys (parallel build path)\n");
+            int n912 = 1000000;
+            int[] keys912 = new int[n912];
+            Object[] dataItems912 = new Object[n912];
+            Random rand912 = new Random(912);
+            for (int i = 0; i < n912; i++) {
+                keys912[i] = i;
+            }
+            for (int i = n912 - 1; i > 0; i--) {
+                int j = rand912.nextInt(i + 1);
+                int temp = keys912[i];
+                keys912[i] = keys912[j];
+                keys912[j] = temp;
+            }
+            for (int i = 0; i < n912; i++) {
+                dataItems912[i] = "d" + keys912[i];
+            }
+            LinkedTree tree912 = new LinkedTree(keys912, dataItems912, true);
+            System.out.println("height: " + tree912.height() + " , Expected : " + 19 + ", Match? " + (tree912.height() == 19));
+            boolean inorder912 = true;
+            int expected912 = 0;
+            LinkedTreeIterator iter912 = tree912.inorderIterator();
+            while (iter912.hasNext()) {
+                inorder912 = inorder912 && (iter912.next() == expected912);
+                expected912++;
+            }
+            System.out.println("inorder iteration gives 0 .. 999999? " + (inorder912 && expected912 == n912));
+            System.out.println("data for 123456: " + tree912.search(123456) + " , Expected : {d123456}");
+
+            System.out.println("\n\nBulk load TEST 3 BEGIN --------------------------------");
+            System.out.println("A run of equal keys in sorted arrays gets its data items newest first, as from repeated inserts\n");
+            int[] keys913 = {1, 2, 2, 2, 2, 3};
+            String[] dataItems913 = {"a", "b", "c", "d", "e", "f"};
+            LinkedTree tree913 = new LinkedTree(keys913, dataItems913);
+            LinkedTree inserted913 = new LinkedTree();
+            for (int i = 0; i < keys913.length; i++) {
+                inserted913.insert(keys913[i], dataItems913[i]);
+            }
+            String results913 = tree913.search(2).toString();
+            System.out.println("data for 2: " + results913 + " , Expected : " + inserted913.search(2) + ", Match? " + results913.equals(inserted913.search(2).toString()));
+            System.out.println("data for 3: " + tree913.search(3) + " , Expected : {f}, Match? " + tree913.search(3).toString().equals("{f}"));
+
 
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
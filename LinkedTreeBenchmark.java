@@ -0,0 +1,271 @@
+/*
+ * LinkedTreeBenchmark.java
+ *
+ * Computer Science E-22
+ */
+
+import java.util.*;
+
+/*
+ * Benchmarks for the access modes of LinkedTree. Run with the name of a
+ * benchmark (e.g. "finger") to run just that one, or with no arguments
+ * to run them all.
+ */
+public class LinkedTreeBenchmark {
+    // # of keys in the trees
+    private static final int N = 1000000;
+    
+    /*
+     * sortedKeys - returns the keys 0, 2, 4, ..., 2(n-1) in order
+     */
+    private static int[] sortedKeys(int n) {
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = 2 * i;
+        }
+        return keys;
+    }
+    
+    /*
+     * nearlySorted - returns a copy of the keys in which each key has
+     * been swapped with one at most window positions further on
+     */
+    private static int[] nearlySorted(int[] keys, int window, Random rand) {
+        int[] result = keys.clone();
+        for (int i = 0; i < result.length; i++) {
+            int j = Math.min(result.length - 1, i + rand.nextInt(window));
+            int temp = result[i];
+            result[i] = result[j];
+            result[j] = temp;
+        }
+        return result;
+    }
+    
+    /*
+     * shuffled - returns a copy of the keys in random order
+     */
+    private static int[] shuffled(int[] keys, Random rand) {
+        int[] result = keys.clone();
+        for (int i = result.length - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int temp = result[i];
+            result[i] = result[j];
+            result[j] = temp;
+        }
+        return result;
+    }
+    
+    /*
+     * timeSearches - searches for each of the probes, a few times over,
+     * and returns the best time in ns per search
+     */
+    private static long timeSearches(LinkedTree tree, int[] probes) {
+        long best = Long.MAX_VALUE;
+        int found = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < probes.length; i++) {
+                if (tree.search(probes[i]) != null) {
+                    found++;
+                }
+            }
+            best = Math.min(best, (System.nanoTime() - start) / probes.length);
+        }
+        if (found < 0) {
+            System.out.println();    // keeps the searches from being optimized away
+        }
+        return best;
+    }
+    
+    /*
+     * Finger search: searches a balanced tree in sorted, nearly sorted
+     * and random order, with and without finger mode. Half of the
+     * probes are keys in the tree and half fall between two keys.
+     */
+    private static void fingerBenchmark() {
+        System.out.println("--- Finger search: " + N + " keys, balanced tree ---");
+        int[] keys = sortedKeys(N);
+        LinkedTree tree = new LinkedTree(keys.clone(), new Object[N], true);
+        
+        Random rand = new Random(16);
+        int[] sorted = new int[2 * N];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        int[][] patterns = {sorted, nearlySorted(sorted, 16, rand), shuffled(sorted, rand)};
+        String[] names = {"sorted", "nearly sorted", "random"};
+        
+        for (int p = 0; p < patterns.length; p++) {
+            tree.setFingerSearch(false);
+            long plain = timeSearches(tree, patterns[p]);
+            tree.setFingerSearch(true);
+            long finger = timeSearches(tree, patterns[p]);
+            System.out.println(names[p] + ": from root " + plain + " ns/search, from finger " + finger + " ns/search");
+        }
+        
+        System.out.println();
+        System.out.println("--- Finger insert: " + N + " keys into an empty balanced tree ---");
+        int[][] insertPatterns = {keys, nearlySorted(keys, 16, rand), shuffled(keys, rand)};
+        for (int p = 0; p < insertPatterns.length; p++) {
+            long[] nanos = new long[2];
+            for (int mode = 0; mode < 2; mode++) {
+                LinkedTree t = new LinkedTree(true);
+                t.setFingerSearch(mode == 1);
+                long start = System.nanoTime();
+                for (int i = 0; i < insertPatterns[p].length; i++) {
+                    t.insert(insertPatterns[p][i], null);
+                }
+                nanos[mode] = (System.nanoTime() - start) / N;
+            }
+            System.out.println(names[p] + ": from root " + nanos[0] + " ns/insert, from finger " + nanos[1] + " ns/insert");
+        }
+    }
+    
+    /*
+     * zipfProbes - returns count keys drawn from the given keys with a
+     * Zipfian distribution: the key of rank r (in a random ranking) is
+     * chosen with probability proportional to 1/r^skew
+     */
+    private static int[] zipfProbes(int[] keys, int count, double skew, Random rand) {
+        int[] ranked = shuffled(keys, rand);
+        double[] cumulative = new double[ranked.length];
+        double total = 0;
+        for (int r = 0; r < ranked.length; r++) {
+            total += 1.0 / Math.pow(r + 1, skew);
+            cumulative[r] = total;
+        }
+        
+        int[] probes = new int[count];
+        for (int i = 0; i < count; i++) {
+            int r = Arrays.binarySearch(cumulative, rand.nextDouble() * total);
+            if (r < 0) {
+                r = -r - 1;
+            }
+            probes[i] = ranked[Math.min(r, ranked.length - 1)];
+        }
+        return probes;
+    }
+    
+    /*
+     * Splay mode: looks up Zipfian-distributed keys in a plain tree, a
+     * balanced tree and a splay tree, all built from the same keys in
+     * random order. The # of comparisons a lookup makes is the depth of
+     * its key plus one; it is measured just before each search, so for
+     * the splay tree it reflects the splaying done by earlier lookups.
+     */
+    private static void splayBenchmark() {
+        System.out.println("--- Splay mode: " + N + " keys, " + 2 * N + " Zipfian lookups ---");
+        Random rand = new Random(17);
+        int[] keys = shuffled(sortedKeys(N), rand);
+        String[] names = {"plain", "balanced", "splay"};
+        
+        for (double skew : new double[] {0.8, 1.0, 1.2}) {
+            int[] probes = zipfProbes(keys, 2 * N, skew, rand);
+            StringBuilder line = new StringBuilder("skew " + skew + ":");
+            for (int mode = 0; mode < names.length; mode++) {
+                LinkedTree tree = new LinkedTree(mode == 1);
+                tree.setSplaying(mode == 2);
+                tree.insertKeys(keys);
+                
+                long comparisons = 0;
+                for (int i = 0; i < probes.length; i++) {
+                    comparisons += tree.depthIter(probes[i]) + 1;
+                    tree.search(probes[i]);
+                }
+                long nanos = timeSearches(tree, probes);
+                line.append(String.format(" %s %.1f cmp/lookup %d ns/lookup;", names[mode],
+                                          (double) comparisons / probes.length, nanos));
+            }
+            System.out.println(line);
+        }
+    }
+    
+    /*
+     * Batch search: looks up random keys in a balanced tree, one search
+     * at a time and with searchAll, for several batch sizes. Half of
+     * the probes are keys in the tree.
+     */
+    private static void batchBenchmark() {
+        System.out.println("--- Batch search: " + N + " keys, balanced tree ---");
+        LinkedTree tree = new LinkedTree(sortedKeys(N), new Object[N], true);
+        Random rand = new Random(18);
+        
+        for (int batchSize : new int[] {16, 256, 4096, N}) {
+            int batches = Math.max(1, 2 * N / batchSize);
+            int[][] batchKeys = new int[batches][batchSize];
+            for (int b = 0; b < batches; b++) {
+                for (int i = 0; i < batchSize; i++) {
+                    batchKeys[b][i] = rand.nextInt(2 * N);
+                }
+            }
+            
+            long loop = Long.MAX_VALUE;
+            long batch = Long.MAX_VALUE;
+            int found = 0;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                for (int b = 0; b < batches; b++) {
+                    for (int i = 0; i < batchSize; i++) {
+                        if (tree.search(batchKeys[b][i]) != null) {
+                            found++;
+                        }
+                    }
+                }
+                loop = Math.min(loop, System.nanoTime() - start);
+                
+                start = System.nanoTime();
+                for (int b = 0; b < batches; b++) {
+                    if (tree.searchAll(batchKeys[b])[0] != null) {
+                        found++;
+                    }
+                }
+                batch = Math.min(batch, System.nanoTime() - start);
+            }
+            if (found < 0) {
+                System.out.println();    // keeps the searches from being optimized away
+            }
+            long keys = (long) batches * batchSize;
+            System.out.println("batches of " + batchSize + ": search loop " + loop / keys
+                               + " ns/key, searchAll " + batch / keys + " ns/key");
+        }
+    }
+    
+    /*
+     * Metrics: times random searches in a balanced tree with the
+     * metrics off and on, and prints the metrics that were collected.
+     */
+    private static void metricsBenchmark() {
+        System.out.println("--- Metrics: " + N + " keys, balanced tree ---");
+        LinkedTree tree = new LinkedTree(sortedKeys(N), new Object[N], true);
+        int[] probes = shuffled(sortedKeys(N), new Random(19));
+        for (int i = 0; i < probes.length; i += 2) {
+            probes[i]++;    // half of the probes miss
+        }
+        
+        long off = timeSearches(tree, probes);
+        tree.setMetrics(true);
+        long on = timeSearches(tree, probes);
+        System.out.println("metrics off " + off + " ns/search, metrics on " + on + " ns/search");
+        System.out.print(tree.metrics());
+    }
+    
+    public static void main(String[] args) {
+        String which = (args.length > 0) ? args[0] : "all";
+        if (which.equals("all") || which.equals("finger")) {
+            fingerBenchmark();
+            System.out.println();
+        }
+        if (which.equals("all") || which.equals("splay")) {
+            splayBenchmark();
+            System.out.println();
+        }
+        if (which.equals("all") || which.equals("batch")) {
+            batchBenchmark();
+            System.out.println();
+        }
+        if (which.equals("all") || which.equals("metrics")) {
+            metricsBenchmark();
+            System.out.println();
+        }
+    }
+}
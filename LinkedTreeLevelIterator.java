@@ -0,0 +1,15 @@
+/*
+ * LinkedTreeLevelIterator.java
+ *
+ * Computer Science E-22
+ */
+
+/**
+ * An interface for level-order (breadth-first) iterators over a
+ * LinkedTree, which also tell the caller where each level begins.
+ */
+public interface LinkedTreeLevelIterator extends LinkedTreeIterator {
+    // Return the level (depth) of the key most recently returned by
+    // next(), where the root is at level 0.
+    int level();
+}
@@ -0,0 +1,251 @@
+/*
+ * LinkedTreeMetrics.java
+ *
+ * Computer Science E-22
+ */
+
+import java.util.concurrent.atomic.*;
+import jdk.jfr.*;
+
+/*
+ * Operation counters, comparison counts and latency histograms for a
+ * LinkedTree, collected while the tree's metrics are turned on (see
+ * LinkedTree.setMetrics). A tree with metrics turned off has no
+ * LinkedTreeMetrics object at all, so it pays only a null check per
+ * operation.
+ *
+ * The counters are atomic, so readers that share a tree (for example,
+ * through ConcurrentLinkedTree) can record their searches at the same
+ * time. Each operation is also reported to Java Flight Recorder as a
+ * LinkedTree.Operation event, and each snapshot as a LinkedTree.Shape
+ * event; they cost nothing beyond an allocation unless a recording
+ * that enables them is running.
+ */
+public class LinkedTreeMetrics {
+    // the kinds of operation that are measured
+    public static final int INSERT = 0;
+    public static final int SEARCH = 1;
+    public static final int DELETE = 2;
+
+    private static final String[] OP_NAMES = {"insert", "search", "delete"};
+
+    // latency bucket b counts operations that took < 2^b ns
+    // (and >= 2^(b-1) ns, for b > 0)
+    private static final int BUCKETS = 64;
+
+    private AtomicLongArray counts;
+    private AtomicLongArray hits;
+    private AtomicLongArray comparisons;
+    private AtomicLongArray latencies;
+
+    LinkedTreeMetrics() {
+        counts = new AtomicLongArray(OP_NAMES.length);
+        hits = new AtomicLongArray(OP_NAMES.length);
+        comparisons = new AtomicLongArray(OP_NAMES.length);
+        latencies = new AtomicLongArray(OP_NAMES.length * BUCKETS);
+    }
+
+    /*
+     * record - records an operation of the specified kind on the key
+     * that started (System.nanoTime) at start. comparisons is the
+     * length of the key's search path from the root, and found tells
+     * whether the key was already in the tree.
+     */
+    void record(int op, int key, int comparisons, boolean found, long start) {
+        long nanos = System.nanoTime() - start;
+        counts.incrementAndGet(op);
+        if (found) {
+            hits.incrementAndGet(op);
+        }
+        this.comparisons.addAndGet(op, comparisons);
+        latencies.incrementAndGet(op * BUCKETS + bucket(nanos));
+
+        OperationEvent event = new OperationEvent();
+        if (event.isEnabled()) {
+            event.operation = OP_NAMES[op];
+            event.key = key;
+            event.comparisons = comparisons;
+            event.found = found;
+            event.latency = nanos;
+            event.commit();
+        }
+    }
+
+    /* bucket - returns the latency bucket for the specified # of ns */
+    private static int bucket(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    /*
+     * snapshot - returns a copy of the current counters together with
+     * the shape of the tree: depthCounts[d] is the # of nodes at depth d.
+     */
+    Snapshot snapshot(long[] depthCounts) {
+        Snapshot s = new Snapshot();
+        for (int op = 0; op < OP_NAMES.length; op++) {
+            s.counts[op] = counts.get(op);
+            s.hits[op] = hits.get(op);
+            s.comparisons[op] = comparisons.get(op);
+            for (int b = 0; b < BUCKETS; b++) {
+                s.latencies[op][b] = latencies.get(op * BUCKETS + b);
+            }
+        }
+        s.depthCounts = depthCounts;
+
+        ShapeEvent event = new ShapeEvent();
+        if (event.isEnabled()) {
+            event.size = s.size();
+            event.height = s.height();
+            event.averageDepth = s.averageDepth();
+            event.commit();
+        }
+        return s;
+    }
+
+    /*
+     * The metrics of a tree at one point in time. The op parameters of
+     * the methods are INSERT, SEARCH or DELETE; deleteMax counts as a
+     * delete.
+     */
+    public static class Snapshot {
+        private long[] counts = new long[OP_NAMES.length];
+        private long[] hits = new long[OP_NAMES.length];
+        private long[] comparisons = new long[OP_NAMES.length];
+        private long[][] latencies = new long[OP_NAMES.length][BUCKETS];
+        private long[] depthCounts;
+
+        private Snapshot() {
+        }
+
+        /* count - returns the # of operations of the specified kind */
+        public long count(int op) {
+            return counts[op];
+        }
+
+        /*
+         * hits - returns the # of operations of the specified kind whose
+         * key was in the tree
+         */
+        public long hits(int op) {
+            return hits[op];
+        }
+
+        /*
+         * averageComparisons - returns the average # of keys compared on
+         * the path from the root by operations of the specified kind
+         */
+        public double averageComparisons(int op) {
+            return (counts[op] == 0) ? 0 : (double) comparisons[op] / counts[op];
+        }
+
+        /*
+         * latencyPercentile - returns an upper bound, in ns, on the
+         * latency of the specified fraction (0 to 1) of the operations
+         * of the specified kind. The bound is a power of 2.
+         */
+        public long latencyPercentile(int op, double fraction) {
+            long target = (long) Math.ceil(fraction * counts[op]);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += latencies[op][b];
+                if (seen >= target && seen > 0) {
+                    return 1L << b;
+                }
+            }
+            return 0;
+        }
+
+        /*
+         * latencyHistogram - returns a copy of the latency histogram for
+         * the specified kind of operation: element b is the # of
+         * operations that took less than 2^b ns (and at least 2^(b-1) ns)
+         */
+        public long[] latencyHistogram(int op) {
+            return latencies[op].clone();
+        }
+
+        /*
+         * depthHistogram - returns a copy of the depth histogram: element d
+         * is the # of nodes at depth d
+         */
+        public long[] depthHistogram() {
+            return depthCounts.clone();
+        }
+
+        /* height - returns the height of the tree (-1 if it was empty) */
+        public int height() {
+            return depthCounts.length - 1;
+        }
+
+        /* size - returns the # of nodes in the tree */
+        public long size() {
+            long size = 0;
+            for (long c : depthCounts) {
+                size += c;
+            }
+            return size;
+        }
+
+        /* averageDepth - returns the average depth of the nodes */
+        public double averageDepth() {
+            long total = 0;
+            for (int d = 0; d < depthCounts.length; d++) {
+                total += d * depthCounts[d];
+            }
+            return (depthCounts.length == 0) ? 0 : (double) total / size();
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("size %d, height %d, average depth %.2f%n",
+                                    size(), height(), averageDepth()));
+            for (int op = 0; op < OP_NAMES.length; op++) {
+                sb.append(String.format("%s: %d (%d hits), %.2f comparisons, p50 < %d ns, p99 < %d ns%n",
+                                        OP_NAMES[op], counts[op], hits[op],
+                                        averageComparisons(op),
+                                        latencyPercentile(op, 0.5),
+                                        latencyPercentile(op, 0.99)));
+            }
+            return sb.toString();
+        }
+    }
+
+    /* A single insert, search or delete. */
+    @Name("LinkedTree.Operation")
+    @Label("LinkedTree Operation")
+    @Category("LinkedTree")
+    @StackTrace(false)
+    static class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Key")
+        int key;
+
+        @Label("Comparisons")
+        int comparisons;
+
+        @Label("Found")
+        boolean found;
+
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    /* The shape of a tree when a snapshot was taken. */
+    @Name("LinkedTree.Shape")
+    @Label("LinkedTree Shape")
+    @Category("LinkedTree")
+    @StackTrace(false)
+    static class ShapeEvent extends Event {
+        @Label("Size")
+        long size;
+
+        @Label("Height")
+        int height;
+
+        @Label("Average Depth")
+        double averageDepth;
+    }
+}
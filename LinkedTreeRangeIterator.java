@@ -0,0 +1,21 @@
+/*
+ * LinkedTreeRangeIterator.java
+ *
+ * Computer Science E-22
+ */
+
+/**
+ * An interface for inorder iterators over a LinkedTree that can also
+ * give the data associated with each key and reposition themselves,
+ * so that a window of keys can be visited without starting over from
+ * the smallest key in the tree.
+ */
+public interface LinkedTreeRangeIterator extends LinkedTreeIterator {
+    // Return the list of data items for the key most recently
+    // returned by next().
+    List data();
+
+    // Reposition the iterator at the smallest key >= key (or, for a
+    // descending iterator, at the largest key <= key).
+    void seek(int key);
+}
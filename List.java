@@ -38,4 +38,68 @@ public interface List {
 
     /* returns an iterator object for this list. */
     ListIterator iterator();
+
+    /*
+     * adds the items in the array at positions i, i+1, i+2, etc., in
+     * order, shifting the items that are currently in positions i, i+1,
+     * i+2, etc. to the right by items.length. Returns false if the list
+     * is full, and true otherwise.
+     *
+     * This version calls addItem for each item; implementations that
+     * can splice in all of the items at once override it, and those
+     * that can become full check for room before adding any of them.
+     */
+    default boolean addAll(int i, Object[] items) {
+        if (i < 0 || i > length()) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int k = 0; k < items.length; k++) {
+            if (!addItem(items[k], i + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * removes the items in positions from through to-1, shifting the
+     * items that are currently in positions to, to+1, etc. to the left
+     * by to-from. Throws an IndexOutOfBoundsException unless
+     * 0 <= from <= to <= length().
+     */
+    default void removeRange(int from, int to) {
+        if (from < 0 || to > length() || from > to) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int k = from; k < to; k++) {
+            removeItem(from);
+        }
+    }
+
+    /* returns an array containing the items in the list, in order */
+    default Object[] toArray() {
+        Object[] result = new Object[length()];
+        ListIterator iter = iterator();
+        for (int k = 0; k < result.length; k++) {
+            result[k] = iter.next();
+        }
+        return result;
+    }
+
+    /*
+     * returns a new list containing the items in positions from through
+     * to-1. The new list is a copy: changing either list does not change
+     * the other. Throws an IndexOutOfBoundsException unless
+     * 0 <= from <= to <= length().
+     */
+    default List copyOfRange(int from, int to) {
+        if (from < 0 || to > length() || from > to) {
+            throw new IndexOutOfBoundsException();
+        }
+        Object[] items = new Object[to - from];
+        for (int k = 0; k < items.length; k++) {
+            items[k] = getItem(from + k);
+        }
+        return new LLList(items);
+    }
 }
@@ -0,0 +1,574 @@
+/*
+ * LoggedLinkedTree.java
+ *
+ * Computer Science E-22
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.CRC32;
+
+/*
+ * A LinkedTree whose updates are recorded in a write-ahead log, so that
+ * no insert, delete or deleteMax that has returned is lost if the
+ * process dies.
+ *
+ * The tree keeps two kinds of files in its directory:
+ *
+ *     checkpoint-<g>.bin   the whole tree, written with LinkedTree.save
+ *     wal-<g>.log          the updates made since checkpoint <g>
+ *
+ * where <g> is the generation # (generation 0 has no checkpoint file).
+ * Each log record is
+ *
+ *     length | CRC-32 of the payload | payload
+ *
+ * and the payload is an operation code, a key and (for an insert) the
+ * data item. When the tree is opened, it loads the newest checkpoint and
+ * replays its log. A record that was only partly written when the
+ * process died fails its length or CRC check, so the replay stops there
+ * and the log is cut back to the last complete record.
+ *
+ * Group commit: an update is applied to the tree and appended to an
+ * in-memory batch while holding the tree's lock, but the lock is
+ * released before the batch is forced to disk. The first writer to
+ * find no fsync in progress becomes the leader: it takes everything in
+ * the batch, writes it and forces it, while the writers that arrive in
+ * the meantime add to the next batch and wait. One fsync thus covers
+ * the updates of all the writers that were waiting for it.
+ *
+ * If writing or forcing the log fails, the log is marked failed: the
+ * writers waiting for that fsync, and every update after it, get an
+ * IOException, because the records they added may never reach the
+ * disk. The tree has to be reopened to continue from what was logged.
+ *
+ * checkpoint() saves the tree as the next generation and then starts
+ * a new, empty log. The old files are only deleted once the new
+ * checkpoint is complete, so a crash at any point leaves a usable pair.
+ */
+public class LoggedLinkedTree implements Closeable {
+    // operation codes
+    private static final byte INSERT = 1;
+    private static final byte DELETE = 2;
+    private static final byte DELETE_MAX = 3;
+    
+    private Path dir;
+    private LinkedTree tree;
+    private long generation;
+    private FileChannel log;
+    
+    // The batch of records not yet written, and the sequence # of the
+    // last record added to it. Guarded by the tree's lock (this).
+    private ByteArrayOutputStream batch;
+    private long appendedSeq;
+    
+    // The sequence # of the last record known to be on disk, and whether
+    // a leader is writing a batch. Guarded by syncMonitor.
+    private final Object syncMonitor = new Object();
+    private long durableSeq;
+    private boolean syncing;
+    
+    // the error that made the log unusable, or null if there was none
+    private volatile IOException failure;
+    
+    // # of fsyncs so far, to show how well the commits are grouped
+    private AtomicLong syncs = new AtomicLong();
+    
+    private LoggedLinkedTree(Path dir, boolean balanced) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        
+        // Find the newest complete checkpoint.
+        generation = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "checkpoint-*.bin")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long g = Long.parseLong(name.substring(11, name.length() - 4));
+                generation = Math.max(generation, g);
+            }
+        }
+        
+        if (generation == 0) {
+            tree = new LinkedTree(balanced);
+        } else {
+            try (MappedLinkedTree checkpoint = MappedLinkedTree.open(checkpointFile(generation))) {
+                tree = checkpoint.toLinkedTree(balanced);
+            }
+        }
+        
+        log = FileChannel.open(logFile(generation), StandardOpenOption.CREATE,
+                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay();
+        batch = new ByteArrayOutputStream();
+    }
+    
+    /*
+     * open - opens the tree stored in the specified directory (which
+     * is created if necessary), recovering every update that was
+     * logged before the last time it was closed or the process died.
+     */
+    public static LoggedLinkedTree open(Path dir, boolean balanced) throws IOException {
+        return new LoggedLinkedTree(dir, balanced);
+    }
+    
+    private Path checkpointFile(long g) {
+        return dir.resolve("checkpoint-" + g + ".bin");
+    }
+    
+    private Path logFile(long g) {
+        return dir.resolve("wal-" + g + ".log");
+    }
+    
+    /*
+     * replay - applies the records in the log to the tree, and cuts the
+     * log back to the end of the last complete record
+     */
+    private void replay() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+          Channels.newInputStream(log.position(0)), 1 << 16));
+        long goodLength = 0;
+        long fileLength = log.size();
+        CRC32 crc = new CRC32();
+        
+        while (goodLength + 8 <= fileLength) {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length <= 0 || goodLength + 8 + length > fileLength) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            
+            apply(ByteBuffer.wrap(payload));
+            goodLength += 8 + length;
+        }
+        
+        log.truncate(goodLength);
+        log.position(goodLength);
+    }
+    
+    /* apply - performs the update described by a log record payload */
+    private void apply(ByteBuffer payload) throws IOException {
+        byte op = payload.get();
+        int key = payload.getInt();
+        if (op == INSERT) {
+            tree.insert(key, MappedLinkedTree.readItem(payload));
+        } else if (op == DELETE) {
+            tree.delete(key);
+        } else if (op == DELETE_MAX) {
+            tree.deleteMax();
+        } else {
+            throw new IOException("bad log record: operation " + op);
+        }
+    }
+    
+    /*
+     * append - adds a record to the current batch and returns its
+     * sequence #. The caller must hold the tree's lock.
+     */
+    private long append(byte op, int key, Object item, boolean hasItem)
+      throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(op);
+        out.writeInt(key);
+        if (hasItem) {
+            MappedLinkedTree.writeItem(out, item);
+        }
+        out.flush();
+        
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        DataOutputStream batchOut = new DataOutputStream(batch);
+        batchOut.writeInt(bytes.size());
+        batchOut.writeInt((int) crc.getValue());
+        bytes.writeTo(batchOut);
+        
+        appendedSeq++;
+        return appendedSeq;
+    }
+    
+    /*
+     * commit - returns once the record with the specified sequence #
+     * is on disk, either because another writer's fsync covered it or
+     * because this writer became the leader and forced it itself
+     */
+    private void commit(long seq) throws IOException {
+        while (true) {
+            synchronized (syncMonitor) {
+                while (syncing && durableSeq < seq) {
+                    try {
+                        syncMonitor.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                if (durableSeq >= seq) {
+                    return;
+                }
+                checkFailure();
+                syncing = true;
+            }
+            
+            long written = durableSeq;
+            try {
+                written = flush();
+            } finally {
+                synchronized (syncMonitor) {
+                    durableSeq = Math.max(durableSeq, written);
+                    syncing = false;
+                    syncMonitor.notifyAll();
+                }
+            }
+        }
+    }
+    
+    /* checkFailure - throws an IOException if the log has failed */
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw new IOException("the log failed; reopen the tree", e);
+        }
+    }
+    
+    /*
+     * flush - writes the current batch to the log and forces it to
+     * disk. Returns the sequence # of the last record written. Only the
+     * leader (the thread that set syncing) may call it.
+     *
+     * The records are only removed from the batch once they are on
+     * disk. If the write or the force fails, the log is marked failed,
+     * so that no later fsync can report them as durable.
+     */
+    private long flush() throws IOException {
+        byte[] bytes;
+        long seq;
+        synchronized (this) {
+            bytes = batch.toByteArray();
+            seq = appendedSeq;
+        }
+        
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                log.write(buffer);
+            }
+            log.force(false);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+        syncs.incrementAndGet();
+        
+        // Keep the records that were added while this batch was written.
+        synchronized (this) {
+            byte[] all = batch.toByteArray();
+            batch.reset();
+            batch.write(all, bytes.length, all.length - bytes.length);
+        }
+        return seq;
+    }
+    
+    /*
+     * search - returns the list of data items associated with the key,
+     * or null if the key is not in the tree
+     */
+    public synchronized List search(int key) {
+        return tree.search(key);
+    }
+    
+    /* size - returns the # of keys in the tree */
+    public synchronized int size() {
+        return tree.size();
+    }
+    
+    /*
+     * insert - adds the (key, data) pair to the tree, and returns once
+     * the update is on disk. The data item must be a string, an
+     * integer, null or a Serializable object.
+     */
+    public void insert(int key, Object data) throws IOException {
+        long seq;
+        synchronized (this) {
+            seq = append(INSERT, key, data, true);
+            tree.insert(key, data);
+        }
+        commit(seq);
+    }
+    
+    /*
+     * delete - removes the key from the tree and returns its data
+     * items (or null if it was not in the tree), once the update is
+     * on disk
+     */
+    public List delete(int key) throws IOException {
+        long seq;
+        List removed;
+        synchronized (this) {
+            if (tree.search(key) == null) {
+                return null;
+            }
+            seq = append(DELETE, key, null, false);
+            removed = tree.delete(key);
+        }
+        commit(seq);
+        return removed;
+    }
+    
+    /*
+     * deleteMax - removes the largest key and returns it (or -1 if the
+     * tree is empty), once the update is on disk
+     */
+    public int deleteMax() throws IOException {
+        long seq;
+        int max;
+        synchronized (this) {
+            if (tree.size() == 0) {
+                return -1;
+            }
+            seq = append(DELETE_MAX, 0, null, false);
+            max = tree.deleteMax();
+        }
+        commit(seq);
+        return max;
+    }
+    
+    /*
+     * checkpoint - saves the whole tree as a new generation and starts
+     * an empty log for it, so that the next open doesn't have to replay
+     * the updates made so far
+     */
+    public void checkpoint() throws IOException {
+        // Become the leader, so that no other thread is writing the log.
+        synchronized (syncMonitor) {
+            while (syncing) {
+                try {
+                    syncMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            checkFailure();
+            syncing = true;
+        }
+        
+        long written = durableSeq;
+        try {
+            synchronized (this) {
+                written = flush();
+                
+                long next = generation + 1;
+                Path temp = dir.resolve("checkpoint-" + next + ".tmp");
+                tree.save(temp);
+                try (FileChannel file = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    file.force(true);
+                }
+                Files.move(temp, checkpointFile(next), StandardCopyOption.ATOMIC_MOVE);
+                
+                FileChannel newLog = FileChannel.open(logFile(next),
+                  StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                  StandardOpenOption.TRUNCATE_EXISTING);
+                
+                // The rename and the new log are only durable once the
+                // directory itself is forced, and the old files must not
+                // be deleted before then.
+                syncDir();
+                log.close();
+                log = newLog;
+                
+                Files.deleteIfExists(logFile(generation));
+                Files.deleteIfExists(checkpointFile(generation));
+                generation = next;
+            }
+        } finally {
+            synchronized (syncMonitor) {
+                durableSeq = Math.max(durableSeq, written);
+                syncing = false;
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+    
+    /* syncDir - forces the entries of the tree's directory to disk */
+    private void syncDir() throws IOException {
+        try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+            d.force(true);
+        }
+    }
+    
+    /* syncCount - returns the # of fsyncs of the log so far */
+    public long syncCount() {
+        return syncs.get();
+    }
+    
+    /* close - writes any remaining records and closes the log */
+    public void close() throws IOException {
+        long seq;
+        synchronized (this) {
+            seq = appendedSeq;
+        }
+        try {
+            commit(seq);
+        } finally {
+            log.close();
+        }
+    }
+    
+    /* deletes the directory used by the test and everything in it */
+    private static void deleteDir(Path dir) throws IOException {
+        if (Files.exists(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+    
+    /*
+     * runWriters - has the specified # of threads each make ops
+     * updates through the specified action, and returns the time taken
+     * in ms
+     */
+    private static long runWriters(int threads, final int ops,
+      final Updater updater) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        java.util.List<Future<?>> futures = new ArrayList<Future<?>>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            futures.add(pool.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    for (int i = 0; i < ops; i++) {
+                        updater.update(id, i);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        pool.shutdown();
+        return (System.nanoTime() - start) / 1000000;
+    }
+    
+    // an update made by thread id in runWriters
+    private interface Updater {
+        void update(int id, int i) throws IOException;
+    }
+    
+    /*
+     * Tests recovery after a simulated crash (including a torn last
+     * record), and then compares the update throughput of the tree with
+     * and without the log. The optional argument is the # of updates per
+     * thread (default 2000).
+     */
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("loggedtree");
+        
+        System.out.println("--- Testing recovery ---");
+        System.out.println();
+        LoggedLinkedTree tree = LoggedLinkedTree.open(dir, true);
+        int[] keys = {37, 26, 42, 13, 35, 56, 30, 47, 70};
+        for (int i = 0; i < keys.length; i++) {
+            tree.insert(keys[i], "data for key " + keys[i]);
+        }
+        tree.checkpoint();
+        tree.insert(26, 2626);
+        tree.delete(37);
+        tree.deleteMax();
+        // "crash": abandon the tree without closing it, and leave half
+        // of a record at the end of the log
+        try (FileChannel log = FileChannel.open(tree.logFile(tree.generation), StandardOpenOption.WRITE)) {
+            log.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 20, 1, 2, 3}), log.size());
+        }
+        
+        LoggedLinkedTree recovered = LoggedLinkedTree.open(dir, true);
+        String results = "";
+        LinkedTreeIterator iter = recovered.tree.inorderIterator();
+        while (iter.hasNext()) {
+            results = results + iter.next() + " ";
+        }
+        System.out.println("recovered keys: " + results);
+        System.out.println("MATCHES EXPECTED RESULTS?: " + results.equals("13 26 30 35 42 47 56 "));
+        System.out.println("data for 26: " + recovered.search(26) + " , Expected : {2626, data for key 26}");
+        recovered.insert(99, "data for key 99");
+        recovered.close();
+        recovered = LoggedLinkedTree.open(dir, true);
+        System.out.println("log still usable after the torn record? " + (recovered.search(99) != null));
+        recovered.close();
+        tree.log.close();
+        deleteDir(dir);
+        
+        // a failed fsync: the log's channel is closed under the tree,
+        // so its next write throws an IOException
+        dir = Files.createTempDirectory("loggedtree");
+        LoggedLinkedTree failing = LoggedLinkedTree.open(dir, true);
+        failing.insert(1, "one");
+        failing.log.close();
+        int errors = 0;
+        for (int key = 2; key <= 3; key++) {
+            try {
+                failing.insert(key, "key " + key);
+            } catch (IOException e) {
+                errors++;
+            }
+        }
+        System.out.println("inserts after the failure that threw: " + errors + " , Expected : 2, Match? " + (errors == 2));
+        System.out.println("durable sequence # after the failure: " + failing.durableSeq + " , Expected : 1, Match? " + (failing.durableSeq == 1));
+        recovered = LoggedLinkedTree.open(dir, true);
+        System.out.println("keys recovered after the failure: " + recovered.size() + " , Expected : 1, Match? "
+          + (recovered.size() == 1 && recovered.search(1) != null));
+        recovered.close();
+        deleteDir(dir);
+        
+        int threads = 8;
+        int ops = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        System.out.println();
+        System.out.println("--- Benchmark: " + threads + " threads x " + ops + " inserts ---");
+        System.out.println();
+        
+        final ConcurrentLinkedTree plain = new ConcurrentLinkedTree();
+        long plainMillis = runWriters(threads, ops, new Updater() {
+            public void update(int id, int i) {
+                plain.insert(i * 8 + id, "data");
+            }
+        });
+        System.out.println("log off: " + plainMillis + " ms");
+        
+        dir = Files.createTempDirectory("loggedtree");
+        final LoggedLinkedTree logged = LoggedLinkedTree.open(dir, true);
+        long loggedMillis = runWriters(threads, ops, new Updater() {
+            public void update(int id, int i) throws IOException {
+                logged.insert(i * 8 + id, "data");
+            }
+        });
+        System.out.println("log on:  " + loggedMillis + " ms, " + logged.syncCount() + " fsyncs for " + (threads * ops) + " inserts ("
+          + (threads * ops / Math.max(logged.syncCount(), 1)) + " per fsync)");
+        logged.close();
+        
+        final LoggedLinkedTree single = LoggedLinkedTree.open(dir, true);
+        long singleMillis = runWriters(1, ops, new Updater() {
+            public void update(int id, int i) throws IOException {
+                single.insert(-1 - i, "data");
+            }
+        });
+        System.out.println("log on, 1 thread x " + ops + " inserts: " + singleMillis + " ms, " + single.syncCount() + " fsyncs");
+        single.close();
+        deleteDir(dir);
+    }
+}
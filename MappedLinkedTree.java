@@ -0,0 +1,380 @@
+/*
+ * MappedLinkedTree.java
+ *
+ * Computer Science E-22
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * A read-only view of a LinkedTree that was written to disk with
+ * LinkedTree.save, opened with LinkedTree.open (or MappedLinkedTree.open).
+ *
+ * The file format is
+ *
+ *     header:   MAGIC, VERSION, n                 (3 ints)
+ *     keys:     the n distinct keys, ascending    (n ints)
+ *     offsets:  n + 1 longs; the data for key i is in bytes
+ *               offsets[i] .. offsets[i+1]-1 of the data section
+ *     data:     for each key, the # of data items, then each item as a
+ *               type tag and its bytes (see writeItem)
+ *
+ * all in big-endian order. Opening a file maps the keys and offsets into
+ * memory through a FileChannel and reads nothing else, so a reopened
+ * tree can answer searches right away: a search is a binary search of
+ * the mapped keys, and only the data of the key that is found is read
+ * and decoded. The operating system pages the file in as it is used.
+ */
+public class MappedLinkedTree implements Closeable {
+    private static final int MAGIC = 0x4C545245;    // "LTRE"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    
+    // the type tags of the data items
+    private static final byte NULL_ITEM = 0;
+    private static final byte STRING_ITEM = 1;
+    private static final byte INTEGER_ITEM = 2;
+    private static final byte OBJECT_ITEM = 3;
+    
+    private FileChannel channel;
+    private IntBuffer keys;       // the mapped keys
+    private LongBuffer offsets;   // the mapped data offsets
+    private long dataStart;       // the file position of the data section
+    private int size;
+    
+    private MappedLinkedTree(FileChannel channel) throws IOException {
+        this.channel = channel;
+        
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new EOFException("not a LinkedTree file");
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("not a LinkedTree file");
+        }
+        size = header.getInt();
+        
+        long indexBytes = 4L * size + 8L * (size + 1);
+        if (HEADER_BYTES + indexBytes > Integer.MAX_VALUE) {
+            throw new IOException("too many keys to map: " + size);
+        }
+        MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY,
+                                             HEADER_BYTES, indexBytes);
+        keys = index.slice(0, 4 * size).asIntBuffer();
+        offsets = index.slice(4 * size, 8 * (size + 1)).asLongBuffer();
+        dataStart = HEADER_BYTES + indexBytes;
+    }
+    
+    /*
+     * open - opens the tree stored in the specified file
+     */
+    public static MappedLinkedTree open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedLinkedTree(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /*
+     * save - writes the keys and data items of the specified tree to
+     * the file, replacing its contents. Data items other than strings,
+     * integers and null must be Serializable.
+     */
+    static void save(LinkedTree tree, Path path) throws IOException {
+        int n = tree.size();
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long dataStart = HEADER_BYTES + 4L * n + 8L * (n + 1);
+            long[] dataOffsets = new long[n + 1];
+            
+            // Write the header and the keys, and then skip the offsets,
+            // which are only known once the data has been written.
+            DataOutputStream out = new DataOutputStream(
+              new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            LinkedTreeIterator keyIter = tree.inorderIterator();
+            while (keyIter.hasNext()) {
+                out.writeInt(keyIter.next());
+            }
+            out.flush();
+            channel.position(dataStart);
+            
+            CountingOutputStream counter = new CountingOutputStream(
+              new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out = new DataOutputStream(counter);
+            LinkedTreeRangeIterator iter =
+              tree.rangeSearch(Integer.MIN_VALUE, Integer.MAX_VALUE);
+            for (int i = 0; iter.hasNext(); i++) {
+                iter.next();
+                dataOffsets[i] = counter.count;
+                List data = iter.data();
+                out.writeInt(data.length());
+                ListIterator items = data.iterator();
+                while (items.hasNext()) {
+                    writeItem(out, items.next());
+                }
+            }
+            out.flush();
+            dataOffsets[n] = counter.count;
+            
+            ByteBuffer offsetBytes = ByteBuffer.allocate(8 * (n + 1));
+            offsetBytes.asLongBuffer().put(dataOffsets);
+            long position = HEADER_BYTES + 4L * n;
+            while (offsetBytes.hasRemaining()) {
+                position += channel.write(offsetBytes, position);
+            }
+        }
+    }
+    
+    /*
+     * writeItem - writes a data item as a type tag and its bytes.
+     * Strings and integers get compact encodings; anything else is
+     * written with Java serialization.
+     */
+    static void writeItem(DataOutputStream out, Object item)
+      throws IOException {
+        if (item == null) {
+            out.writeByte(NULL_ITEM);
+        } else if (item instanceof String) {
+            byte[] bytes = ((String) item).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(STRING_ITEM);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (item instanceof Integer) {
+            out.writeByte(INTEGER_ITEM);
+            out.writeInt((Integer) item);
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream objOut = new ObjectOutputStream(bytes);
+            objOut.writeObject(item);
+            objOut.close();
+            out.writeByte(OBJECT_ITEM);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+    
+    /*
+     * readItem - reads a data item written by writeItem
+     */
+    static Object readItem(ByteBuffer in) throws IOException {
+        byte tag = in.get();
+        if (tag == NULL_ITEM) {
+            return null;
+        } else if (tag == INTEGER_ITEM) {
+            return in.getInt();
+        }
+        
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        if (tag == STRING_ITEM) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        try (ObjectInputStream objIn =
+               new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return objIn.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("cannot read data item", e);
+        }
+    }
+    
+    /* an output stream that counts the bytes written through it */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+        
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+        
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+    
+    /* size - returns the # of keys */
+    public int size() {
+        return size;
+    }
+    
+    /*
+     * indexOf - returns the position of the key in the mapped keys,
+     * or -1 if it is not there
+     */
+    private int indexOf(int key) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int midKey = keys.get(mid);
+            if (midKey < key) {
+                lo = mid + 1;
+            } else if (midKey > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+    
+    /* contains - returns true if the key is in the tree */
+    public boolean contains(int key) {
+        return indexOf(key) >= 0;
+    }
+    
+    /*
+     * search - returns a list of the data items associated with the
+     * key, read from the file, or null if the key is not in the tree
+     */
+    public LLList search(int key) throws IOException {
+        int i = indexOf(key);
+        return (i < 0) ? null : readData(i);
+    }
+    
+    /* readData - reads and decodes the data items of the ith key */
+    private LLList readData(int i) throws IOException {
+        long start = offsets.get(i);
+        int length = (int) (offsets.get(i + 1) - start);
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, dataStart + start + bytes.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        bytes.flip();
+        
+        Object[] items = new Object[bytes.getInt()];
+        for (int j = 0; j < items.length; j++) {
+            items[j] = readItem(bytes);
+        }
+        return new LLList(items);
+    }
+    
+    /* inorderIterator - returns an iterator over the keys, in order */
+    public LinkedTreeIterator inorderIterator() {
+        return new LinkedTreeIterator() {
+            private int next = 0;
+            
+            public boolean hasNext() {
+                return next < size;
+            }
+            
+            public int next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return keys.get(next++);
+            }
+        };
+    }
+    
+    /*
+     * toLinkedTree - reads the whole file into a new (modifiable)
+     * LinkedTree, using the linear-time bulk-load constructor
+     */
+    public LinkedTree toLinkedTree(boolean balanced) throws IOException {
+        int count = 0;
+        LLList[] lists = new LLList[size];
+        for (int i = 0; i < size; i++) {
+            lists[i] = readData(i);
+            count += lists[i].length();
+        }
+        
+        // The constructor adds each item to the front of its key's
+        // list, so the items of each key are passed in reverse.
+        int[] allKeys = new int[count];
+        Object[] allItems = new Object[count];
+        int pos = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = lists[i].length() - 1; j >= 0; j--) {
+                allKeys[pos] = keys.get(i);
+                allItems[pos] = lists[i].getItem(j);
+                pos++;
+            }
+        }
+        return new LinkedTree(allKeys, allItems, balanced);
+    }
+    
+    /* close - closes the file */
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    /*
+     * Saves a tree, reopens it and checks the results. The optional
+     * argument is the # of keys in a larger tree to time (default
+     * 1,000,000).
+     */
+    public static void main(String[] args) throws IOException {
+        System.out.println("--- Testing save and open ---");
+        System.out.println();
+        LinkedTree tree = new LinkedTree();
+        int[] keys = {37, 26, 42, 13, 35, 56, 30, 47, 70};
+        tree.insertKeys(keys);
+        tree.insert(26, 2626);
+        tree.insert(30, null);
+        tree.insert(30, new java.util.Date(0));
+        
+        Path file = Files.createTempFile("linkedtree", ".bin");
+        tree.save(file);
+        try (MappedLinkedTree mapped = LinkedTree.open(file)) {
+            System.out.println("size: " + mapped.size() + " , Expected : " + 9 + ", Match? " + (mapped.size() == 9));
+            System.out.println("data for 26: " + mapped.search(26) + " , Expected : " + tree.search(26) + ", Match? " + mapped.search(26).toString().equals(tree.search(26).toString()));
+            System.out.println("data for 30: " + mapped.search(30) + " , Match? " + mapped.search(30).toString().equals(tree.search(30).toString()));
+            System.out.println("search for 50: " + mapped.search(50) + " , Expected : null");
+            
+            LinkedTree copy = mapped.toLinkedTree(false);
+            boolean same = true;
+            for (int i = 0; i < keys.length; i++) {
+                same = same && copy.search(keys[i]).toString().equals(tree.search(keys[i]).toString());
+            }
+            System.out.println("toLinkedTree gives the same data? " + same);
+        }
+        
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        System.out.println();
+        System.out.println("--- Timing: " + n + " keys ---");
+        System.out.println();
+        int[] bigKeys = new int[n];
+        Object[] items = new Object[n];
+        for (int i = 0; i < n; i++) {
+            bigKeys[i] = 3 * i;
+            items[i] = "data for key " + (3 * i);
+        }
+        LinkedTree big = new LinkedTree(bigKeys, items);
+        long start = System.nanoTime();
+        big.save(file);
+        System.out.println("save: " + (System.nanoTime() - start) / 1000000 + " ms, " + (Files.size(file) >> 10) + " KB");
+        
+        start = System.nanoTime();
+        try (MappedLinkedTree mapped = LinkedTree.open(file)) {
+            LLList first = mapped.search(3 * (n / 2));
+            System.out.println("open + first search: " + (System.nanoTime() - start) / 1000 + " us, found " + first);
+            
+            start = System.nanoTime();
+            LinkedTree rebuilt = mapped.toLinkedTree(false);
+            System.out.println("toLinkedTree (full rebuild, for comparison): " + (System.nanoTime() - start) / 1000000 + " ms, " + rebuilt.size() + " keys");
+        }
+        Files.delete(file);
+    }
+}
@@ -0,0 +1,528 @@
+/*
+ * OffHeapLinkedTree.java
+ *
+ * Computer Science E-22
+ */
+
+import java.lang.management.*;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.util.*;
+
+/*
+ * A binary search tree with integer keys and integer values (such as
+ * record #s) that is stored entirely outside the Java heap, so that the
+ * garbage collector never has to scan it, however many keys it holds.
+ *
+ * The tree manages its own arena of direct ByteBuffers. Each node is a
+ * 20-byte record
+ *
+ *     key | left | right | parent | first value cell
+ *
+ * where the links are node #s, and each value is an 8-byte cell
+ *
+ *     value | next value cell
+ *
+ * in a second arena, so that the values of a key form a chain. NIL (-1)
+ * stands for a missing node or cell. Node # n is stored in chunk
+ * n >>> CHUNK_BITS, which means that the arena can grow one chunk at a
+ * time past the 2 GB limit of a single buffer. Deleted nodes and cells
+ * are kept on free lists and reused.
+ *
+ * search, insert, delete and the iterators work only with ints and the
+ * buffers, so they create no objects apart from the iterator itself.
+ * close() releases the arena right away rather than waiting for the
+ * buffers to be collected; the tree can't be used after that.
+ */
+public class OffHeapLinkedTree implements AutoCloseable {
+    private static final int NIL = -1;
+    
+    // the layout of a node record
+    private static final int KEY = 0;
+    private static final int LEFT = 4;
+    private static final int RIGHT = 8;
+    private static final int PARENT = 12;
+    private static final int VALUES = 16;
+    private static final int NODE_BYTES = 20;
+    
+    // the layout of a value cell
+    private static final int VALUE = 0;
+    private static final int NEXT = 4;
+    private static final int CELL_BYTES = 8;
+    
+    // # of records per chunk is 2^CHUNK_BITS
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    
+    private ByteBuffer[] nodeChunks;
+    private int nodeCount;      // # of node records ever used
+    private int freeNode;       // first free node record, or NIL
+    
+    private ByteBuffer[] cellChunks;
+    private int cellCount;      // # of value cells ever used
+    private int freeCell;       // first free value cell, or NIL
+    
+    private int root;
+    private int size;           // # of keys in the tree
+    private boolean closed;
+    
+    public OffHeapLinkedTree() {
+        nodeChunks = new ByteBuffer[16];
+        cellChunks = new ByteBuffer[16];
+        freeNode = NIL;
+        freeCell = NIL;
+        root = NIL;
+    }
+    
+    /*
+     * Accessors for the fields of node n and value cell c. The chunk
+     * holding a record is found from the high bits of its #, and the
+     * record's offset within the chunk from the low bits.
+     */
+    private int getNode(int n, int field) {
+        return nodeChunks[n >>> CHUNK_BITS].getInt((n & CHUNK_MASK) * NODE_BYTES + field);
+    }
+    
+    private void setNode(int n, int field, int value) {
+        nodeChunks[n >>> CHUNK_BITS].putInt((n & CHUNK_MASK) * NODE_BYTES + field, value);
+    }
+    
+    private int getCell(int c, int field) {
+        return cellChunks[c >>> CHUNK_BITS].getInt((c & CHUNK_MASK) * CELL_BYTES + field);
+    }
+    
+    private void setCell(int c, int field, int value) {
+        cellChunks[c >>> CHUNK_BITS].putInt((c & CHUNK_MASK) * CELL_BYTES + field, value);
+    }
+    
+    /*
+     * addChunk - returns the array of chunks with a new chunk of the
+     * specified record size added for records starting at # count
+     */
+    private static ByteBuffer[] addChunk(ByteBuffer[] chunks, int count, int recordBytes) {
+        int chunk = count >>> CHUNK_BITS;
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, 2 * chunks.length);
+        }
+        chunks[chunk] = ByteBuffer.allocateDirect(recordBytes << CHUNK_BITS)
+                                  .order(ByteOrder.nativeOrder());
+        return chunks;
+    }
+    
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("the tree has been closed");
+        }
+    }
+    
+    /* newNode - returns the # of a free node record for the key */
+    private int newNode(int key, int parentNode) {
+        int n;
+        if (freeNode != NIL) {
+            n = freeNode;
+            freeNode = getNode(n, LEFT);
+        } else {
+            if (nodeCount == Integer.MAX_VALUE) {
+                throw new IllegalStateException("the tree is full");
+            }
+            if ((nodeCount & CHUNK_MASK) == 0) {
+                nodeChunks = addChunk(nodeChunks, nodeCount, NODE_BYTES);
+            }
+            n = nodeCount++;
+        }
+        
+        setNode(n, KEY, key);
+        setNode(n, LEFT, NIL);
+        setNode(n, RIGHT, NIL);
+        setNode(n, PARENT, parentNode);
+        setNode(n, VALUES, NIL);
+        return n;
+    }
+    
+    /* addValue - adds the value to the front of node n's chain */
+    private void addValue(int n, int value) {
+        int c;
+        if (freeCell != NIL) {
+            c = freeCell;
+            freeCell = getCell(c, NEXT);
+        } else {
+            if (cellCount == Integer.MAX_VALUE) {
+                throw new IllegalStateException("the tree is full");
+            }
+            if ((cellCount & CHUNK_MASK) == 0) {
+                cellChunks = addChunk(cellChunks, cellCount, CELL_BYTES);
+            }
+            c = cellCount++;
+        }
+        
+        setCell(c, VALUE, value);
+        setCell(c, NEXT, getNode(n, VALUES));
+        setNode(n, VALUES, c);
+    }
+    
+    /* releaseValues - puts the chain of cells starting at c on the free list */
+    private void releaseValues(int c) {
+        while (c != NIL) {
+            int next = getCell(c, NEXT);
+            setCell(c, NEXT, freeCell);
+            freeCell = c;
+            c = next;
+        }
+    }
+    
+    /* size - returns the # of keys in the tree */
+    public int size() {
+        return size;
+    }
+    
+    /* findNode - returns the node with the key, or NIL if there is none */
+    private int findNode(int key) {
+        checkOpen();
+        int trav = root;
+        while (trav != NIL) {
+            int travKey = getNode(trav, KEY);
+            if (key == travKey) {
+                return trav;
+            }
+            trav = getNode(trav, (key < travKey) ? LEFT : RIGHT);
+        }
+        return NIL;
+    }
+    
+    /* contains - returns true if the key is in the tree */
+    public boolean contains(int key) {
+        return findNode(key) != NIL;
+    }
+    
+    /*
+     * search - copies the values associated with the key into dest,
+     * most recently inserted first, and returns the # of values the key
+     * has, or -1 if the key is not in the tree. If dest is too small,
+     * only as many values as fit are copied.
+     */
+    public int search(int key, int[] dest) {
+        int n = findNode(key);
+        if (n == NIL) {
+            return -1;
+        }
+        
+        int count = 0;
+        for (int c = getNode(n, VALUES); c != NIL; c = getCell(c, NEXT)) {
+            if (count < dest.length) {
+                dest[count] = getCell(c, VALUE);
+            }
+            count++;
+        }
+        return count;
+    }
+    
+    /*
+     * insert - inserts the specified (key, value) pair in the tree so
+     * that the tree remains a binary search tree
+     */
+    public void insert(int key, int value) {
+        checkOpen();
+        int parentNode = NIL;
+        int trav = root;
+        while (trav != NIL) {
+            int travKey = getNode(trav, KEY);
+            if (key == travKey) {
+                addValue(trav, value);
+                return;
+            }
+            parentNode = trav;
+            trav = getNode(trav, (key < travKey) ? LEFT : RIGHT);
+        }
+        
+        int n = newNode(key, parentNode);
+        addValue(n, value);
+        if (parentNode == NIL) {
+            root = n;
+        } else if (key < getNode(parentNode, KEY)) {
+            setNode(parentNode, LEFT, n);
+        } else {
+            setNode(parentNode, RIGHT, n);
+        }
+        size++;
+    }
+    
+    /*
+     * delete - removes the key and its values from the tree. Returns
+     * false if the key was not in the tree.
+     */
+    public boolean delete(int key) {
+        int n = findNode(key);
+        if (n == NIL) {
+            return false;
+        }
+        releaseValues(getNode(n, VALUES));
+        deleteNode(n);
+        return true;
+    }
+    
+    /*
+     * deleteNode - unlinks node n, whose values have been released
+     */
+    private void deleteNode(int n) {
+        if (getNode(n, LEFT) != NIL && getNode(n, RIGHT) != NIL) {
+            // Move the inorder successor's key and values into n, and
+            // unlink the successor, which has no left child, instead.
+            int replace = getNode(n, RIGHT);
+            while (getNode(replace, LEFT) != NIL) {
+                replace = getNode(replace, LEFT);
+            }
+            setNode(n, KEY, getNode(replace, KEY));
+            setNode(n, VALUES, getNode(replace, VALUES));
+            n = replace;
+        }
+        
+        int child = getNode(n, LEFT);
+        if (child == NIL) {
+            child = getNode(n, RIGHT);
+        }
+        int p = getNode(n, PARENT);
+        if (p == NIL) {
+            root = child;
+        } else if (getNode(p, LEFT) == n) {
+            setNode(p, LEFT, child);
+        } else {
+            setNode(p, RIGHT, child);
+        }
+        if (child != NIL) {
+            setNode(child, PARENT, p);
+        }
+        
+        setNode(n, LEFT, freeNode);
+        freeNode = n;
+        size--;
+    }
+    
+    /*
+     * deleteMax - removes the largest key and returns it, or -1 if
+     * the tree is empty
+     */
+    public int deleteMax() {
+        checkOpen();
+        if (root == NIL) {
+            return -1;
+        }
+        
+        int trav = root;
+        while (getNode(trav, RIGHT) != NIL) {
+            trav = getNode(trav, RIGHT);
+        }
+        int max = getNode(trav, KEY);
+        releaseValues(getNode(trav, VALUES));
+        deleteNode(trav);
+        return max;
+    }
+    
+    /*
+     * depth - returns the depth of the node with the key, or -1 if
+     * the key is not in the tree
+     */
+    public int depth(int key) {
+        checkOpen();
+        int depth = 0;
+        int trav = root;
+        while (trav != NIL) {
+            int travKey = getNode(trav, KEY);
+            if (key == travKey) {
+                return depth;
+            }
+            trav = getNode(trav, (key < travKey) ? LEFT : RIGHT);
+            depth++;
+        }
+        return -1;
+    }
+    
+    /* inorderIterator - returns an inorder iterator for this tree */
+    public LinkedTreeIterator inorderIterator() {
+        checkOpen();
+        return new InorderIterator();
+    }
+    
+    /*
+     * inner class for an inorder iterator, which follows the parent
+     * links in the same way as LinkedTree's
+     */
+    private class InorderIterator implements LinkedTreeIterator {
+        private int nextNode;
+        
+        private InorderIterator() {
+            nextNode = root;
+            while (nextNode != NIL && getNode(nextNode, LEFT) != NIL) {
+                nextNode = getNode(nextNode, LEFT);
+            }
+        }
+        
+        public boolean hasNext() {
+            return nextNode != NIL;
+        }
+        
+        public int next() {
+            if (nextNode == NIL) {
+                throw new NoSuchElementException();
+            }
+            checkOpen();
+            
+            int key = getNode(nextNode, KEY);
+            int r = getNode(nextNode, RIGHT);
+            if (r != NIL) {
+                nextNode = r;
+                while (getNode(nextNode, LEFT) != NIL) {
+                    nextNode = getNode(nextNode, LEFT);
+                }
+            } else {
+                int p = getNode(nextNode, PARENT);
+                int child = nextNode;
+                while (p != NIL && getNode(p, RIGHT) == child) {
+                    child = p;
+                    p = getNode(p, PARENT);
+                }
+                nextNode = p;
+            }
+            return key;
+        }
+    }
+    
+    /*
+     * offHeapBytes - returns the # of bytes of off-heap memory that the
+     * arena has allocated
+     */
+    public long offHeapBytes() {
+        long bytes = 0;
+        for (int i = 0; i < nodeChunks.length; i++) {
+            if (nodeChunks[i] != null) {
+                bytes += nodeChunks[i].capacity();
+            }
+        }
+        for (int i = 0; i < cellChunks.length; i++) {
+            if (cellChunks[i] != null) {
+                bytes += cellChunks[i].capacity();
+            }
+        }
+        return bytes;
+    }
+    
+    /*
+     * close - frees the arena. The buffers' memory is released right
+     * away where the JDK allows it (through sun.misc.Unsafe's
+     * invokeCleaner); otherwise it is released when they are collected.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        freeChunks(nodeChunks);
+        freeChunks(cellChunks);
+        nodeChunks = null;
+        cellChunks = null;
+        root = NIL;
+        size = 0;
+    }
+    
+    private static void freeChunks(ByteBuffer[] chunks) {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // leave the buffers for the garbage collector
+        }
+        
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null && invokeCleaner != null) {
+                try {
+                    invokeCleaner.invoke(unsafe, chunks[i]);
+                } catch (ReflectiveOperationException e) {
+                    invokeCleaner = null;
+                }
+            }
+            chunks[i] = null;
+        }
+    }
+    
+    /* returns the total # of collections and collection time so far */
+    private static long[] gcActivity() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+            millis += Math.max(gc.getCollectionTime(), 0);
+        }
+        return new long[] {count, millis};
+    }
+    
+    /*
+     * Tests the operations on a small tree, and then builds a tree of
+     * random keys (100,000,000 by default, or the # given as the
+     * argument) and reports the garbage collections that happened
+     * while building and searching it. The full-size run needs about
+     * 3 GB of direct memory, e.g. java -XX:MaxDirectMemorySize=4g.
+     */
+    public static void main(String[] args) {
+        System.out.println("--- Testing the operations ---");
+        System.out.println();
+        OffHeapLinkedTree small = new OffHeapLinkedTree();
+        int[] keys = {37, 26, 42, 13, 35, 56, 30, 47, 70};
+        for (int i = 0; i < keys.length; i++) {
+            small.insert(keys[i], keys[i] * 10);
+        }
+        small.insert(26, 261);
+        small.delete(37);
+        int max = small.deleteMax();
+        System.out.println("deleteMax: " + max + " , Expected : " + 70 + ", Match? " + (max == 70));
+        max = small.deleteMax();
+        System.out.println("deleteMax: " + max + " , Expected : " + 56 + ", Match? " + (max == 56));
+        
+        String results = "";
+        LinkedTreeIterator iter = small.inorderIterator();
+        while (iter.hasNext()) {
+            results = results + iter.next() + " ";
+        }
+        System.out.println("inorder: " + results);
+        System.out.println("MATCHES EXPECTED RESULTS?: " + results.equals("13 26 30 35 42 47 "));
+        int[] values = new int[4];
+        int count = small.search(26, values);
+        System.out.println("values for 26: " + count + " values, " + values[0] + " " + values[1] + " , Expected : 2 values, 261 260, Match? " + (count == 2 && values[0] == 261 && values[1] == 260));
+        System.out.println("depth of 47: " + small.depth(47) + " , Expected : " + 1 + ", Match? " + (small.depth(47) == 1));
+        System.out.println("search for 37: " + small.search(37, values) + " , Expected : " + -1 + ", Match? " + (small.search(37, values) == -1));
+        small.close();
+        
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 100000000;
+        System.out.println();
+        System.out.println("--- Building " + n + " random keys off the heap ---");
+        System.out.println();
+        long[] gcBefore = gcActivity();
+        long start = System.nanoTime();
+        Random rand = new Random(11);
+        try (OffHeapLinkedTree tree = new OffHeapLinkedTree()) {
+            for (int i = 0; i < n; i++) {
+                tree.insert(rand.nextInt(), i);
+            }
+            long buildMillis = (System.nanoTime() - start) / 1000000;
+            
+            start = System.nanoTime();
+            int found = 0;
+            rand = new Random(11);
+            int lookups = Math.min(n, 10000000);
+            for (int i = 0; i < lookups; i++) {
+                if (tree.contains(rand.nextInt())) {
+                    found++;
+                }
+            }
+            long searchMillis = (System.nanoTime() - start) / 1000000;
+            long[] gcAfter = gcActivity();
+            
+            System.out.println("keys: " + tree.size() + ", off-heap bytes: " + (tree.offHeapBytes() >> 20) + " MB");
+            System.out.println("build: " + buildMillis + " ms, " + lookups + " lookups: " + searchMillis + " ms, found " + found + " , Expected : " + lookups + ", Match? " + (found == lookups));
+            System.out.println("GC during build and search: " + (gcAfter[0] - gcBefore[0]) + " collections, " + (gcAfter[1] - gcBefore[1]) + " ms");
+        }
+    }
+}
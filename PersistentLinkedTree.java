@@ -0,0 +1,447 @@
+/*
+ * PersistentLinkedTree.java
+ *
+ * Computer Science E-22
+ */
+
+import java.util.*;
+
+/*
+ * A binary search tree with integer keys whose nodes are never modified
+ * once they are created. An update copies only the nodes on the path
+ * from the root to the node it changes, and shares the rest of the tree
+ * with the previous version.
+ *
+ * This means that snapshot() can hand out the current version in O(1)
+ * time, and readers can search, iterate and aggregate over a snapshot
+ * without any locking while writers keep updating the tree. A version
+ * that is no longer referenced by any snapshot is simply reclaimed by
+ * the garbage collector.
+ *
+ * Unlike LinkedTree, the nodes have no parent references -- a node that
+ * is shared by several versions has a different parent in each one --
+ * so the iterators keep an explicit stack of the nodes above them.
+ */
+public class PersistentLinkedTree {
+    // An immutable node
+    private static class Node {
+        private final int key;
+        private final DataCell data;    // data values for this key
+        private final Node left;
+        private final Node right;
+        private final int size;         // # of nodes in the subtree
+        
+        private Node(int key, DataCell data, Node left, Node right) {
+            this.key = key;
+            this.data = data;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + sizeOf(left) + sizeOf(right);
+        }
+        
+        // returns a copy of this node with the specified children
+        private Node withChildren(Node left, Node right) {
+            return new Node(key, data, left, right);
+        }
+    }
+    
+    // An immutable cell in the list of data values for a key. New values
+    // are added to the front, so the versions can share the rest.
+    private static class DataCell {
+        private final Object item;
+        private final DataCell next;
+        
+        private DataCell(Object item, DataCell next) {
+            this.item = item;
+            this.next = next;
+        }
+    }
+    
+    // the root of the current version. It is volatile so that a snapshot
+    // taken by a reader sees fully constructed nodes.
+    private volatile Node root;
+    
+    public PersistentLinkedTree() {
+        root = null;
+    }
+    
+    private static int sizeOf(Node n) {
+        return (n == null) ? 0 : n.size;
+    }
+    
+    /*
+     * snapshot - returns the current version of the tree in O(1) time.
+     * The snapshot does not change when the tree is updated later on.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(root);
+    }
+    
+    /* search - searches the current version (see Snapshot.search) */
+    public LLList search(int key) {
+        return snapshot().search(key);
+    }
+    
+    /* size - returns the # of keys in the current version */
+    public int size() {
+        return sizeOf(root);
+    }
+    
+    /*
+     * A growable record of the nodes on a path down from the root of a
+     * subtree, and of which way the path went at each of them.
+     */
+    private static class Path {
+        private Node[] nodes = new Node[32];
+        private boolean[] wentLeft = new boolean[32];
+        private int len = 0;
+        
+        private void add(Node n, boolean left) {
+            if (len == nodes.length) {
+                nodes = Arrays.copyOf(nodes, 2 * len);
+                wentLeft = Arrays.copyOf(wentLeft, 2 * len);
+            }
+            nodes[len] = n;
+            wentLeft[len] = left;
+            len++;
+        }
+        
+        /*
+         * rebuild - returns the root of a new version of the subtree in
+         * which the node below the end of the path has been replaced by
+         * replacement. Only the nodes on the path are copied.
+         */
+        private Node rebuild(Node replacement) {
+            Node child = replacement;
+            for (int i = len - 1; i >= 0; i--) {
+                Node n = nodes[i];
+                if (wentLeft[i]) {
+                    child = n.withChildren(child, n.right);
+                } else {
+                    child = n.withChildren(n.left, child);
+                }
+            }
+            return child;
+        }
+    }
+    
+    /*
+     * insert - adds the specified (key, data) pair to the tree, by
+     * creating a new version that shares all but one path with the
+     * current one. Writers are serialized with each other, but they
+     * never block readers.
+     */
+    public synchronized void insert(int key, Object data) {
+        Path path = new Path();
+        
+        Node trav = root;
+        while (trav != null && trav.key != key) {
+            path.add(trav, key < trav.key);
+            trav = (key < trav.key) ? trav.left : trav.right;
+        }
+        
+        Node replacement;
+        if (trav == null) {
+            replacement = new Node(key, new DataCell(data, null), null, null);
+        } else {
+            replacement = new Node(key, new DataCell(data, trav.data),
+                                   trav.left, trav.right);
+        }
+        root = path.rebuild(replacement);
+    }
+    
+    /*
+     * delete - removes the node with the specified key and returns its
+     * list of data items, or null if the key is not in the tree.
+     */
+    public synchronized LLList delete(int key) {
+        Path path = new Path();
+        
+        Node trav = root;
+        while (trav != null && trav.key != key) {
+            path.add(trav, key < trav.key);
+            trav = (key < trav.key) ? trav.left : trav.right;
+        }
+        if (trav == null) {
+            return null;
+        }
+        
+        root = path.rebuild(removeNode(trav));
+        return toLLList(trav.data);
+    }
+    
+    /*
+     * deleteMax - removes the node with the largest key and returns
+     * that key, or -1 if the tree is empty.
+     */
+    public synchronized int deleteMax() {
+        if (root == null) {
+            return -1;
+        }
+        
+        Path path = new Path();
+        
+        Node trav = root;
+        while (trav.right != null) {
+            path.add(trav, false);
+            trav = trav.right;
+        }
+        
+        root = path.rebuild(removeNode(trav));
+        return trav.key;
+    }
+    
+    /*
+     * removeNode - returns the subtree that takes the place of the
+     * subtree rooted at toDelete once toDelete has been removed.
+     * If toDelete has two children, it is replaced by its inorder
+     * successor, and the path down to the successor is copied.
+     */
+    private static Node removeNode(Node toDelete) {
+        if (toDelete.left == null) {
+            return toDelete.right;
+        } else if (toDelete.right == null) {
+            return toDelete.left;
+        }
+        
+        Path path = new Path();
+        
+        Node replace = toDelete.right;
+        while (replace.left != null) {
+            path.add(replace, true);
+            replace = replace.left;
+        }
+        
+        Node newRight = path.rebuild(replace.right);
+        return new Node(replace.key, replace.data, toDelete.left, newRight);
+    }
+    
+    /*
+     * toLLList - returns a new LLList containing the values in the
+     * specified list of data cells
+     */
+    private static LLList toLLList(DataCell cells) {
+        int count = 0;
+        for (DataCell c = cells; c != null; c = c.next) {
+            count++;
+        }
+        Object[] items = new Object[count];
+        int i = 0;
+        for (DataCell c = cells; c != null; c = c.next) {
+            items[i++] = c.item;
+        }
+        return new LLList(items);
+    }
+    
+    /*
+     * A read-only version of the tree. All of its methods can be used
+     * from any thread without locking.
+     */
+    public static class Snapshot {
+        private final Node root;
+        
+        private Snapshot(Node root) {
+            this.root = root;
+        }
+        
+        /* size - returns the # of keys in this version */
+        public int size() {
+            return sizeOf(root);
+        }
+        
+        /*
+         * search - returns a new list containing the data items
+         * associated with the key in this version, or null if the key
+         * is not in it.
+         */
+        public LLList search(int key) {
+            Node trav = root;
+            while (trav != null) {
+                if (key == trav.key) {
+                    return toLLList(trav.data);
+                } else if (key < trav.key) {
+                    trav = trav.left;
+                } else {
+                    trav = trav.right;
+                }
+            }
+            return null;
+        }
+        
+        /*
+         * sumEvens - returns the sum of the even keys in this version,
+         * as a long so that the sum doesn't overflow
+         */
+        public long sumEvens() {
+            long sum = 0;
+            LinkedTreeIterator iter = preorderIterator();
+            while (iter.hasNext()) {
+                int key = iter.next();
+                if (key % 2 == 0) {
+                    sum += key;
+                }
+            }
+            return sum;
+        }
+        
+        /* preorderIterator - returns a preorder iterator for this version */
+        public LinkedTreeIterator preorderIterator() {
+            return new PreorderIterator(root);
+        }
+        
+        /* inorderIterator - returns an inorder iterator for this version */
+        public LinkedTreeIterator inorderIterator() {
+            return new InorderIterator(root);
+        }
+    }
+    
+    /*
+     * private inner class for a preorder iterator. The stack holds
+     * the right children that still have to be visited.
+     */
+    private static class PreorderIterator implements LinkedTreeIterator {
+        private ArrayDeque<Node> stack;
+        
+        private PreorderIterator(Node root) {
+            stack = new ArrayDeque<Node>();
+            if (root != null) {
+                stack.push(root);
+            }
+        }
+        
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+        
+        public int next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            
+            Node n = stack.pop();
+            if (n.right != null) {
+                stack.push(n.right);
+            }
+            if (n.left != null) {
+                stack.push(n.left);
+            }
+            return n.key;
+        }
+    }
+    
+    /*
+     * private inner class for an inorder iterator. The stack holds
+     * the nodes whose left subtrees are being visited.
+     */
+    private static class InorderIterator implements LinkedTreeIterator {
+        private ArrayDeque<Node> stack;
+        
+        private InorderIterator(Node root) {
+            stack = new ArrayDeque<Node>();
+            pushLeftPath(root);
+        }
+        
+        private void pushLeftPath(Node n) {
+            while (n != null) {
+                stack.push(n);
+                n = n.left;
+            }
+        }
+        
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+        
+        public int next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            
+            Node n = stack.pop();
+            pushLeftPath(n.right);
+            return n.key;
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        System.out.println("--- Testing snapshots ---");
+        System.out.println();
+        PersistentLinkedTree tree = new PersistentLinkedTree();
+        int[] keys = {37, 26, 42, 13, 35, 56, 30, 47, 70};
+        for (int i = 0; i < keys.length; i++) {
+            tree.insert(keys[i], "data for key " + keys[i]);
+        }
+        Snapshot before = tree.snapshot();
+        
+        tree.delete(37);
+        tree.deleteMax();
+        tree.insert(36, "data for key 36");
+        tree.insert(26, "more data for key 26");
+        Snapshot after = tree.snapshot();
+        
+        String results = "";
+        LinkedTreeIterator iter = before.inorderIterator();
+        while (iter.hasNext()) {
+            results = results + iter.next() + " ";
+        }
+        System.out.println("old snapshot: " + results);
+        System.out.println("MATCHES EXPECTED RESULTS?: " + results.equals("13 26 30 35 37 42 47 56 70 "));
+        
+        results = "";
+        iter = after.inorderIterator();
+        while (iter.hasNext()) {
+            results = results + iter.next() + " ";
+        }
+        System.out.println("new snapshot: " + results);
+        System.out.println("MATCHES EXPECTED RESULTS?: " + results.equals("13 26 30 35 36 42 47 56 "));
+        System.out.println("old data for 26: " + before.search(26) + ", new data for 26: " + after.search(26));
+        System.out.println("old sumEvens: " + before.sumEvens() + " , Expected : " + 224 + ", Match? " + (before.sumEvens() == 224));
+        System.out.println("new sumEvens: " + after.sumEvens() + " , Expected : " + 190 + ", Match? " + (after.sumEvens() == 190));
+        
+        System.out.println();
+        System.out.println("--- Testing readers running alongside a writer ---");
+        System.out.println();
+        final PersistentLinkedTree shared = new PersistentLinkedTree();
+        final int n = 200000;
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                Random rand = new Random(1);
+                for (int i = 0; i < n; i++) {
+                    int key = rand.nextInt(n);
+                    if (rand.nextInt(4) == 0) {
+                        shared.delete(key);
+                    } else {
+                        shared.insert(key, "data for key " + key);
+                    }
+                }
+            }
+        });
+        writer.start();
+        
+        // Each snapshot must be a consistent version: sorted, with as
+        // many keys as its size says.
+        int snapshots = 0;
+        boolean consistent = true;
+        while (writer.isAlive()) {
+            Snapshot s = shared.snapshot();
+            int count = 0;
+            int prev = Integer.MIN_VALUE;
+            LinkedTreeIterator it = s.inorderIterator();
+            while (it.hasNext()) {
+                int key = it.next();
+                if (count > 0 && key <= prev) {
+                    consistent = false;
+                }
+                prev = key;
+                count++;
+            }
+            if (count != s.size()) {
+                consistent = false;
+            }
+            snapshots++;
+        }
+        writer.join();
+        System.out.println("snapshots scanned while writing: " + snapshots);
+        System.out.println("every snapshot was consistent? " + consistent);
+    }
+}
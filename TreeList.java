@@ -0,0 +1,387 @@
+/*
+ * TreeList.java
+ *
+ * Computer Science E-22
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * A class that implements our simple List interface using a balanced
+ * binary tree whose inorder traversal visits the items in list order
+ * (an "implicit" treap). The nodes store no positions; instead, each
+ * node stores the size of its subtree, so the item at position i is
+ * found by comparing i with the size of the left subtree at each level,
+ * much as LinkedTree.select does.
+ *
+ * Each node also has a random priority, and the tree is kept in heap
+ * order by priority (a parent's priority is at least that of its
+ * children), which gives it expected O(log n) height however the items
+ * are added and removed. getItem, addItem and removeItem therefore
+ * take expected O(log n) time at any position, where LLList has to walk
+ * to the position and ArrList has to shift the items after it.
+ */
+public class TreeList implements List {
+    // Inner class for a node.
+    private class Node {
+        private Object item;
+        private int priority;
+        private int size;      // # of nodes in the subtree rooted here
+        private Node left;
+        private Node right;
+
+        private Node(Object item, int priority) {
+            this.item = item;
+            this.priority = priority;
+            this.size = 1;
+        }
+    }
+
+    // fields of the TreeList object
+    private Node root;
+
+    /*
+     * Constructs a TreeList object for a list that is initially empty.
+     */
+    public TreeList() {
+        root = null;
+    }
+
+    /*
+     * Constructs a TreeList object containing the items in the specified
+     * array. The tree is built in O(n) time as a perfectly balanced tree
+     * whose priorities decrease with depth; they are all above those
+     * that addItem chooses, so later additions go below the built nodes.
+     */
+    public TreeList(Object[] initItems) {
+        root = build(initItems, 0, initItems.length - 1, Integer.MAX_VALUE);
+    }
+
+    /*
+     * build - private helper method that builds a balanced subtree from
+     * initItems[first..last] whose root has the specified priority
+     */
+    private Node build(Object[] initItems, int first, int last, int priority) {
+        if (first > last) {
+            return null;
+        }
+        int mid = (first + last) >>> 1;
+        Node n = new Node(initItems[mid], priority);
+        n.left = build(initItems, first, mid - 1, priority - 1);
+        n.right = build(initItems, mid + 1, last, priority - 1);
+        n.size = last - first + 1;
+        return n;
+    }
+
+    /* sizeOf - returns the size of the subtree rooted at n */
+    private static int sizeOf(Node n) {
+        return (n == null) ? 0 : n.size;
+    }
+
+    /* update - recomputes the size of n from its children */
+    private static void update(Node n) {
+        n.size = sizeOf(n.left) + 1 + sizeOf(n.right);
+    }
+
+    /*
+     * length - returns the number of items in the list
+     */
+    public int length() {
+        return sizeOf(root);
+    }
+
+    /*
+     * isFull - always returns false, because the tree can grow
+     * indefinitely and thus the list is never full.
+     */
+    public boolean isFull() {
+        return false;
+    }
+
+    /*
+     * getNode - private helper method that returns the node holding the
+     * item at position i. It assumes that the value of the parameter is
+     * valid.
+     */
+    private Node getNode(int i) {
+        Node trav = root;
+        while (true) {
+            int leftSize = sizeOf(trav.left);
+            if (i < leftSize) {
+                trav = trav.left;
+            } else if (i > leftSize) {
+                i -= leftSize + 1;
+                trav = trav.right;
+            } else {
+                return trav;
+            }
+        }
+    }
+
+    /*
+     * getItem - returns the item at position i in the list
+     */
+    public Object getItem(int i) {
+        if (i < 0 || i >= length()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        return getNode(i).item;
+    }
+
+    /*
+     * addItem - adds the specified item at position i in the list,
+     * shifting the items that are currently in positions i, i+1, i+2,
+     * etc. to the right by one. Always returns true, because the list
+     * is never full.
+     */
+    public boolean addItem(Object item, int i) {
+        if (i < 0 || i > length()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        // The top priority is reserved for the nodes built by the constructor.
+        int priority = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE / 2);
+        root = insert(root, i, new Node(item, priority));
+        return true;
+    }
+
+    /*
+     * insert - private helper method that adds newNode at position i of
+     * the subtree rooted at n, and returns the new root of the subtree.
+     * newNode goes down until it reaches a node with a lower priority,
+     * and the subtree it replaces is split around position i to become
+     * its children.
+     */
+    private Node insert(Node n, int i, Node newNode) {
+        if (n == null) {
+            return newNode;
+        }
+        if (newNode.priority > n.priority) {
+            split(n, i, newNode);
+            update(newNode);
+            return newNode;
+        }
+
+        int leftSize = sizeOf(n.left);
+        if (i <= leftSize) {
+            n.left = insert(n.left, i, newNode);
+        } else {
+            n.right = insert(n.right, i - leftSize - 1, newNode);
+        }
+        n.size++;
+        return n;
+    }
+
+    /*
+     * split - private helper method that splits the subtree rooted at n
+     * into a subtree with its first i items, which becomes into.left,
+     * and one with the rest, which becomes into.right
+     */
+    private void split(Node n, int i, Node into) {
+        if (n == null) {
+            into.left = null;
+            into.right = null;
+            return;
+        }
+
+        int leftSize = sizeOf(n.left);
+        if (i <= leftSize) {
+            split(n.left, i, into);
+            n.left = into.right;
+            update(n);
+            into.right = n;
+        } else {
+            split(n.right, i - leftSize - 1, into);
+            n.right = into.left;
+            update(n);
+            into.left = n;
+        }
+    }
+
+    /*
+     * removeItem - removes the item at position i in the list,
+     * shifting the items that are currently in positions i+1, i+2,
+     * etc. to the left by one. Returns a reference to the removed
+     * object.
+     */
+    public Object removeItem(int i) {
+        if (i < 0 || i >= length()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        Object removed = getNode(i).item;
+        root = remove(root, i);
+        return removed;
+    }
+
+    /*
+     * remove - private helper method that removes the node at position i
+     * of the subtree rooted at n, replacing it with the merger of its
+     * children, and returns the new root of the subtree
+     */
+    private Node remove(Node n, int i) {
+        int leftSize = sizeOf(n.left);
+        if (i == leftSize) {
+            return merge(n.left, n.right);
+        }
+
+        if (i < leftSize) {
+            n.left = remove(n.left, i);
+        } else {
+            n.right = remove(n.right, i - leftSize - 1);
+        }
+        n.size--;
+        return n;
+    }
+
+    /*
+     * merge - private helper method that combines two subtrees, all of
+     * whose items in a come before those in b, and returns the root of
+     * the result. The root with the higher priority stays on top.
+     */
+    private Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        }
+
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        } else {
+            b.left = merge(a, b.left);
+            update(b);
+            return b;
+        }
+    }
+
+    /*
+     * toString - converts the list into a String of the form
+     * {item0, item1, ...}
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder("{");
+        ListIterator iter = iterator();
+        while (iter.hasNext()) {
+            str.append(iter.next());
+            if (iter.hasNext()) {
+                str.append(", ");
+            }
+        }
+        str.append("}");
+        return str.toString();
+    }
+
+    /*
+     * iterator - returns an iterator for this list
+     */
+    public ListIterator iterator() {
+        return new TreeListIterator();
+    }
+
+    /*
+     * private inner class for an iterator over a TreeList. It performs
+     * an inorder traversal with a stack of the nodes whose left subtrees
+     * are being visited.
+     */
+    private class TreeListIterator implements ListIterator {
+        private ArrayDeque<Node> stack;
+
+        public TreeListIterator() {
+            stack = new ArrayDeque<Node>();
+            pushLeft(root);
+        }
+
+        /* pushes n and the nodes on the path to its leftmost descendant */
+        private void pushLeft(Node n) {
+            while (n != null) {
+                stack.push(n);
+                n = n.left;
+            }
+        }
+
+        /*
+         * hasNext - does the iterator have additional items to visit?
+         */
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        /*
+         * next - returns a reference to the next Object in the iteration
+         */
+        public Object next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+
+            Node n = stack.pop();
+            pushLeft(n.right);
+            return n.item;
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.println("--- Testing TreeList ---");
+        TreeList list = new TreeList(new Object[] {"a", "b", "c", "d"});
+        list.addItem("front", 0);
+        list.addItem("middle", 3);
+        list.addItem("end", 6);
+        System.out.println("list: " + list + " , Expected : {front, a, b, middle, c, d, end}, Match? "
+                           + list.toString().equals("{front, a, b, middle, c, d, end}"));
+        Object removed = list.removeItem(3);
+        System.out.println("removeItem(3): " + removed + " , Expected : middle, Match? " + removed.equals("middle"));
+        System.out.println("getItem(3) after removal: " + list.getItem(3) + " , Expected : c, Match? " + list.getItem(3).equals("c"));
+        System.out.println("length: " + list.length() + " , Expected : 6, Match? " + (list.length() == 6));
+
+        System.out.println();
+        System.out.println("Random adds and removes, checked against an ArrList");
+        Random rand = new Random(24);
+        TreeList tree = new TreeList();
+        ArrList reference = new ArrList();
+        boolean same = true;
+        for (int k = 0; k < 200000; k++) {
+            int op = rand.nextInt(5);
+            if (op < 2 || reference.length() == 0) {
+                int i = rand.nextInt(reference.length() + 1);
+                tree.addItem(k, i);
+                reference.addItem(k, i);
+            } else if (op < 4) {
+                int i = rand.nextInt(reference.length());
+                same = same && tree.removeItem(i).equals(reference.removeItem(i));
+            } else {
+                int i = rand.nextInt(reference.length());
+                same = same && tree.getItem(i).equals(reference.getItem(i));
+            }
+        }
+        ListIterator iter = tree.iterator();
+        for (int i = 0; i < reference.length(); i++) {
+            same = same && iter.hasNext() && iter.next().equals(reference.getItem(i));
+        }
+        same = same && !iter.hasNext() && tree.length() == reference.length();
+        System.out.println("same contents? " + same + " , Expected : true, Match? " + same);
+
+        System.out.println();
+        int n = 2000000;
+        System.out.println("--- Edits at random positions in a list of " + n + " items ---");
+        Object[] initItems = new Object[n];
+        Arrays.fill(initItems, "item");
+        List[] lists = {new LLList(initItems), new ArrList(initItems), new TreeList(initItems)};
+        String[] names = {"LLList", "ArrList", "TreeList"};
+        int[] edits = {200, 5000, 500000};    // each edit is an addItem and a removeItem
+        for (int l = 0; l < lists.length; l++) {
+            Random r = new Random(1);
+            long start = System.nanoTime();
+            for (int k = 0; k < edits[l]; k++) {
+                lists[l].addItem("new", r.nextInt(n + 1));
+                lists[l].removeItem(r.nextInt(n + 1));
+            }
+            long nanos = (System.nanoTime() - start) / (2L * edits[l]);
+            System.out.println(names[l] + ": " + nanos + " ns per addItem/removeItem");
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * UnrolledList.java
+ *
+ * Computer Science E-22
+ */
+
+import java.util.*;
+
+/*
+ * A class that implements our simple List interface using an unrolled
+ * linked list: a doubly linked list of chunks, each of which holds up to
+ * CHUNK_SIZE consecutive items in an array, along with a count of them.
+ *
+ * Compared with LLList, there is one node (and one pointer to follow)
+ * per chunk rather than per item, so the list uses less memory and
+ * visits its items in mostly contiguous memory. getNode-style walks
+ * skip a whole chunk at a time using the counts.
+ *
+ * addItem splits a full chunk into two half-full ones (or, when adding
+ * after the last item of a full chunk, starts a new chunk), and
+ * removeItem refills a chunk that falls below a quarter full from the
+ * chunk after it, merging the two if they fit in one chunk, and unlinks
+ * a last chunk that becomes empty.
+ */
+public class UnrolledList implements List {
+    private static final int CHUNK_SIZE = 64;
+
+    // Inner class for a chunk of consecutive items.
+    private class Chunk {
+        private Object[] items;
+        private int count;    // # of items in use, at items[0 .. count-1]
+        private Chunk next;
+        private Chunk prev;
+
+        private Chunk() {
+            items = new Object[CHUNK_SIZE];
+            count = 0;
+            next = null;
+            prev = null;
+        }
+    }
+
+    // fields of the UnrolledList object
+    private Chunk head;      // the first chunk; there is always at least one
+    private int length;      // # of items in the list
+
+    // The chunk most recently reached by getChunk, and the position of
+    // its first item. addItem and removeItem only change that chunk and
+    // the chunks after it (or, when a chunk empties, move the cursor to
+    // the chunk before it), so the cursor stays valid.
+    private Chunk cursor;
+    private int cursorStart;
+
+    /*
+     * Constructs an UnrolledList object for a list that is initially empty.
+     */
+    public UnrolledList() {
+        head = new Chunk();
+        length = 0;
+        cursor = head;
+        cursorStart = 0;
+    }
+
+    /*
+     * Constructs an UnrolledList object containing the items in the
+     * specified array, in full chunks.
+     */
+    public UnrolledList(Object[] initItems) {
+        this();
+        Chunk last = head;
+        for (int i = 0; i < initItems.length; i += CHUNK_SIZE) {
+            if (i > 0) {
+                Chunk chunk = new Chunk();
+                chunk.prev = last;
+                last.next = chunk;
+                last = chunk;
+            }
+            last.count = Math.min(CHUNK_SIZE, initItems.length - i);
+            System.arraycopy(initItems, i, last.items, 0, last.count);
+        }
+        length = initItems.length;
+    }
+
+    /*
+     * length - returns the number of items in the list
+     */
+    public int length() {
+        return length;
+    }
+
+    /*
+     * isFull - always returns false, because the list can grow
+     * indefinitely and thus the list is never full.
+     */
+    public boolean isFull() {
+        return false;
+    }
+
+    /*
+     * getChunk - private helper method that returns the chunk containing
+     * position i (or, if i == length, the last chunk), and leaves the
+     * cursor on that chunk, so that cursorStart is the position of its
+     * first item. It assumes that the value of the parameter is valid.
+     *
+     * The walk starts from the cursor -- going backwards if i is before
+     * it -- unless i is closer to the head.
+     */
+    private Chunk getChunk(int i) {
+        Chunk trav = head;
+        int start = 0;
+        if (i >= cursorStart - i) {
+            trav = cursor;
+            start = cursorStart;
+        }
+
+        while (i < start) {
+            trav = trav.prev;
+            start -= trav.count;
+        }
+        while (i >= start + trav.count && trav.next != null) {
+            start += trav.count;
+            trav = trav.next;
+        }
+
+        cursor = trav;
+        cursorStart = start;
+        return trav;
+    }
+
+    /*
+     * getItem - returns the item at position i in the list
+     */
+    public Object getItem(int i) {
+        if (i < 0 || i >= length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        Chunk c = getChunk(i);
+        return c.items[i - cursorStart];
+    }
+
+    /*
+     * addItem - adds the specified item at position i in the list,
+     * shifting the items that are currently in positions i, i+1, i+2,
+     * etc. to the right by one. Always returns true, because the list
+     * is never full.
+     */
+    public boolean addItem(Object item, int i) {
+        if (i < 0 || i > length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        Chunk c = getChunk(i);
+        int offset = i - cursorStart;
+        if (c.count == CHUNK_SIZE) {
+            Chunk newChunk = new Chunk();
+            newChunk.next = c.next;
+            newChunk.prev = c;
+            if (c.next != null) {
+                c.next.prev = newChunk;
+            }
+            c.next = newChunk;
+
+            // If the item goes after the last item of c, it starts the new
+            // chunk, which keeps chunks full when items are appended in
+            // order. Otherwise, the second half of c moves to the new chunk.
+            int firstMoved = CHUNK_SIZE;
+            if (offset < CHUNK_SIZE) {
+                firstMoved = CHUNK_SIZE / 2;
+                System.arraycopy(c.items, firstMoved, newChunk.items, 0, CHUNK_SIZE - firstMoved);
+                Arrays.fill(c.items, firstMoved, CHUNK_SIZE, null);
+                newChunk.count = CHUNK_SIZE - firstMoved;
+                c.count = firstMoved;
+            }
+
+            if (offset > firstMoved || offset == CHUNK_SIZE) {
+                offset -= firstMoved;
+                cursorStart += firstMoved;
+                cursor = newChunk;
+                c = newChunk;
+            }
+        }
+
+        System.arraycopy(c.items, offset, c.items, offset + 1, c.count - offset);
+        c.items[offset] = item;
+        c.count++;
+        length++;
+        return true;
+    }
+
+    /*
+     * removeItem - removes the item at position i in the list,
+     * shifting the items that are currently in positions i+1, i+2,
+     * etc. to the left by one. Returns a reference to the removed
+     * object.
+     */
+    public Object removeItem(int i) {
+        if (i < 0 || i >= length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        Chunk c = getChunk(i);
+        int offset = i - cursorStart;
+        Object removed = c.items[offset];
+        System.arraycopy(c.items, offset + 1, c.items, offset, c.count - offset - 1);
+        c.count--;
+        c.items[c.count] = null;    // so the removed item can be garbage collected
+        length--;
+
+        if (c.count == 0 && c.prev != null) {
+            // Unlink the empty chunk, and leave the cursor on the one before it.
+            c.prev.next = c.next;
+            if (c.next != null) {
+                c.next.prev = c.prev;
+            }
+            cursor = c.prev;
+            cursorStart -= cursor.count;
+        } else if (c.count < CHUNK_SIZE / 4 && c.next != null) {
+            refill(c);
+        }
+        return removed;
+    }
+
+    /*
+     * refill - private helper method that moves items from the chunk
+     * after c into c: all of them (removing the next chunk) if they fit,
+     * and otherwise enough of them to leave the two chunks about equal.
+     */
+    private void refill(Chunk c) {
+        Chunk next = c.next;
+        int moved = next.count;
+        if (c.count + next.count > CHUNK_SIZE) {
+            moved = (next.count - c.count) / 2;
+        }
+        System.arraycopy(next.items, 0, c.items, c.count, moved);
+        c.count += moved;
+
+        if (moved == next.count) {
+            c.next = next.next;
+            if (c.next != null) {
+                c.next.prev = c;
+            }
+        } else {
+            System.arraycopy(next.items, moved, next.items, 0, next.count - moved);
+            Arrays.fill(next.items, next.count - moved, next.count, null);
+            next.count -= moved;
+        }
+    }
+
+    /*
+     * toString - converts the list into a String of the form
+     * {item0, item1, ...}
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder("{");
+        ListIterator iter = iterator();
+        while (iter.hasNext()) {
+            str.append(iter.next());
+            if (iter.hasNext()) {
+                str.append(", ");
+            }
+        }
+        str.append("}");
+        return str.toString();
+    }
+
+    /*
+     * iterator - returns an iterator for this list
+     */
+    public ListIterator iterator() {
+        return new UnrolledListIterator();
+    }
+
+    /*
+     * private inner class for an iterator over an UnrolledList
+     */
+    private class UnrolledListIterator implements ListIterator {
+        private Chunk chunk;    // the chunk containing the next item
+        private int offset;     // the position of the next item in chunk
+
+        public UnrolledListIterator() {
+            chunk = head;
+            offset = 0;
+            if (chunk.count == 0) {
+                nextChunk();
+            }
+        }
+
+        /* moves to the start of the next chunk that has any items */
+        private void nextChunk() {
+            do {
+                chunk = chunk.next;
+            } while (chunk != null && chunk.count == 0);
+            offset = 0;
+        }
+
+        /*
+         * hasNext - does the iterator have additional items to visit?
+         */
+        public boolean hasNext() {
+            return (chunk != null);
+        }
+
+        /*
+         * next - returns a reference to the next Object in the iteration
+         */
+        public Object next() {
+            if (chunk == null) {
+                throw new NoSuchElementException();
+            }
+
+            Object item = chunk.items[offset];
+            offset++;
+            if (offset == chunk.count) {
+                nextChunk();
+            }
+            return item;
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.println("--- Testing UnrolledList ---");
+        UnrolledList list = new UnrolledList();
+        for (int i = 0; i < 200; i++) {
+            list.addItem(i, i);
+        }
+        list.addItem("front", 0);
+        list.addItem("middle", 100);
+        System.out.println("length: " + list.length() + " , Expected : 202, Match? " + (list.length() == 202));
+        System.out.println("getItem(0), getItem(100), getItem(201): " + list.getItem(0) + ", " + list.getItem(100) + ", " + list.getItem(201)
+                           + " , Expected : front, middle, 199, Match? "
+                           + (list.getItem(0).equals("front") && list.getItem(100).equals("middle") && list.getItem(201).equals(199)));
+        Object removed = list.removeItem(100);
+        System.out.println("removeItem(100): " + removed + " , Expected : middle, Match? " + removed.equals("middle"));
+        System.out.println("getItem(100) after removal: " + list.getItem(100) + " , Expected : 99, Match? " + list.getItem(100).equals(99));
+        System.out.println("toString of a small list: " + new UnrolledList(new Object[] {"a", "b", "c"})
+                           + " , Expected : {a, b, c}, Match? " + new UnrolledList(new Object[] {"a", "b", "c"}).toString().equals("{a, b, c}"));
+
+        System.out.println();
+        System.out.println("Random adds and removes, checked against an ArrList");
+        Random rand = new Random(23);
+        UnrolledList unrolled = new UnrolledList();
+        ArrList reference = new ArrList();
+        boolean same = true;
+        for (int k = 0; k < 200000; k++) {
+            int op = rand.nextInt(5);
+            if (op < 2 || reference.length() == 0) {
+                int i = rand.nextInt(reference.length() + 1);
+                unrolled.addItem(k, i);
+                reference.addItem(k, i);
+            } else if (op < 4) {
+                int i = rand.nextInt(reference.length());
+                same = same && unrolled.removeItem(i).equals(reference.removeItem(i));
+            } else {
+                int i = rand.nextInt(reference.length());
+                same = same && unrolled.getItem(i).equals(reference.getItem(i));
+            }
+        }
+        ListIterator iter = unrolled.iterator();
+        for (int i = 0; i < reference.length(); i++) {
+            same = same && iter.hasNext() && iter.next().equals(reference.getItem(i));
+        }
+        same = same && !iter.hasNext() && unrolled.length() == reference.length();
+        System.out.println("same contents? " + same + " , Expected : true, Match? " + same);
+
+        System.out.println();
+        System.out.println("--- UnrolledList vs. LLList, 1000000 items ---");
+        int n = 1000000;
+        String[] names = {"LLList", "UnrolledList"};
+        for (int l = 0; l < names.length; l++) {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long before = runtime.totalMemory() - runtime.freeMemory();
+            List items = (l == 0) ? new LLList() : new UnrolledList();
+            for (int i = 0; i < n; i++) {
+                items.addItem(names, i);    // appends, with the same item throughout
+            }
+            System.gc();
+            long bytes = runtime.totalMemory() - runtime.freeMemory() - before;
+
+            long count = 0;
+            long iterate = Long.MAX_VALUE;
+            long inOrder = Long.MAX_VALUE;
+            long random = Long.MAX_VALUE;
+            Random r = new Random(1);
+            for (int round = 0; round < 10; round++) {
+                long start = System.nanoTime();
+                ListIterator it = items.iterator();
+                while (it.hasNext()) {
+                    if (it.next() != null) {
+                        count++;
+                    }
+                }
+                iterate = Math.min(iterate, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    if (items.getItem(i) != null) {
+                        count++;
+                    }
+                }
+                inOrder = Math.min(inOrder, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int k = 0; k < 100; k++) {
+                    if (items.getItem(r.nextInt(n)) != null) {
+                        count++;
+                    }
+                }
+                random = Math.min(random, (System.nanoTime() - start) / 100);
+            }
+            if (count < 0) {
+                System.out.println();    // keeps the loops from being optimized away
+            }
+            System.out.println(String.format("%s: %.1f bytes/item, iterate %.1f ns/item, getItem in order %.1f ns/item, getItem at a random position %d ns",
+                                             names[l], (double) bytes / n, (double) iterate / n,
+                                             (double) inOrder / n, random));
+        }
+    }
+}
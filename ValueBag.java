@@ -0,0 +1,308 @@
+/*
+ * ValueBag.java
+ *
+ * Computer Science E-22
+ */
+
+import java.util.*;
+
+/*
+ * A compact List of the data values for one key of a LinkedTree.
+ *
+ * A bag with a single value (the common case) holds it in a field of
+ * its own, with no array or nodes at all. A second value moves them
+ * into an array, which doubles in size as it fills.
+ *
+ * The list order matches what LinkedTree has always given: the value
+ * added most recently comes first. The array, however, holds the values
+ * in the order they were added, so that adding at the front of the list
+ * -- which is what LinkedTree.insert does -- is an amortized O(1) append
+ * to the array. List position i is array position count - 1 - i.
+ */
+public class ValueBag implements List {
+    private Object single;     // the value, while there is only one
+    private Object[] items;    // the values, oldest first, once there are more
+    private int count;         // # of values in the bag
+    
+    /*
+     * Constructs a bag containing only the specified value.
+     */
+    public ValueBag(Object item) {
+        single = item;
+        count = 1;
+    }
+    
+    /* length - returns the # of values in the bag */
+    public int length() {
+        return count;
+    }
+    
+    /* isFull - always returns false, because the array can grow */
+    public boolean isFull() {
+        return false;
+    }
+    
+    /*
+     * ensureCapacity - moves the values into an array if they are not
+     * in one yet, and makes sure the array has room for n values
+     */
+    private void ensureCapacity(int n) {
+        if (items == null) {
+            items = new Object[Math.max(n, 2)];
+            if (count == 1) {
+                items[0] = single;
+                single = null;
+            }
+        } else if (n > items.length) {
+            items = Arrays.copyOf(items, Math.max(n, 2 * items.length));
+        }
+    }
+    
+    /* getItem - returns the item at position i in the list */
+    public Object getItem(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException();
+        }
+        return (items == null) ? single : items[count - 1 - i];
+    }
+    
+    /*
+     * addItem - adds the item at position i in the list. Adding at the
+     * front (i == 0) appends to the array and takes O(1) amortized time;
+     * elsewhere the values after it in the array have to be shifted.
+     * Always returns true.
+     */
+    public boolean addItem(Object item, int i) {
+        if (i < 0 || i > count) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        ensureCapacity(count + 1);
+        int pos = count - i;
+        System.arraycopy(items, pos, items, pos + 1, count - pos);
+        items[pos] = item;
+        count++;
+        return true;
+    }
+    
+    /*
+     * addAllNewestFirst - adds newItems[first] through newItems[last - 1]
+     * at the front of the list, with the last of them first, just as if
+     * addItem(item, 0) had been called for each of them in turn -- but
+     * with a single copy into the array. (List.addAll(0, newItems) would
+     * keep them in order.)
+     */
+    public void addAllNewestFirst(Object[] newItems, int first, int last) {
+        if (first < 0 || last > newItems.length || first > last) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        int n = last - first;
+        ensureCapacity(count + n);
+        System.arraycopy(newItems, first, items, count, n);
+        count += n;
+    }
+    
+    /*
+     * removeItem - removes the item at position i in the list and
+     * returns it
+     */
+    public Object removeItem(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        Object removed;
+        if (items == null) {
+            removed = single;
+            single = null;
+        } else {
+            int pos = count - 1 - i;
+            removed = items[pos];
+            System.arraycopy(items, pos + 1, items, pos, count - 1 - pos);
+            items[count - 1] = null;
+        }
+        count--;
+        return removed;
+    }
+    
+    /*
+     * copy - returns a new bag with the same values, in the same order.
+     * Each field of this bag is read only once, and a count that doesn't
+     * fit the array is clamped rather than trusted, so the copy never
+     * throws even if another thread is changing the bag; that lets
+     * ConcurrentLinkedTree copy a bag in an optimistic read, and throw
+     * the copy away if the read turns out to have raced with a writer.
+     */
+    ValueBag copy() {
+        Object oneItem = single;
+        Object[] array = items;
+        int n = count;
+        
+        ValueBag copy = new ValueBag(oneItem);
+        if (array != null) {
+            n = Math.max(0, Math.min(n, array.length));
+            copy.single = null;
+            copy.items = Arrays.copyOf(array, Math.max(n, 2));
+        }
+        copy.count = n;
+        return copy;
+    }
+    
+    /*
+     * toString - converts the bag into a String of the form
+     * {item0, item1, ...}
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder("{");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                str.append(", ");
+            }
+            str.append(getItem(i));
+        }
+        str.append("}");
+        return str.toString();
+    }
+    
+    /* iterator - returns an iterator for this bag */
+    public ListIterator iterator() {
+        return new ValueBagIterator();
+    }
+    
+    /*
+     * private inner class for an iterator, which steps backwards
+     * through the array
+     */
+    private class ValueBagIterator implements ListIterator {
+        private int next = 0;      // the list position of the next item
+        
+        public boolean hasNext() {
+            return next < count;
+        }
+        
+        public Object next() {
+            if (next >= count) {
+                throw new NoSuchElementException();
+            }
+            Object item = (items == null) ? single : items[count - 1 - next];
+            next++;
+            return item;
+        }
+    }
+    
+    /*
+     * usedHeap - returns the # of bytes in use on the heap after
+     * asking for a garbage collection
+     */
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+    
+    /*
+     * Tests the list operations against an LLList, and then measures
+     * the heap used by LLLists and ValueBags holding the same values,
+     * for many keys with one value and for a few hot keys with
+     * thousands of values.
+     */
+    public static void main(String[] args) {
+        System.out.println("--- Testing against LLList ---");
+        System.out.println();
+        ValueBag bag = new ValueBag("a");
+        LLList list = new LLList();
+        list.addItem("a", 0);
+        bag.addItem("b", 0);
+        list.addItem("b", 0);
+        bag.addAllNewestFirst(new Object[] {"x", "c", "d"}, 1, 3);
+        list.addItem("c", 0);
+        list.addItem("d", 0);
+        bag.addItem("e", 2);
+        list.addItem("e", 2);
+        bag.addItem("f", 5);
+        list.addItem("f", 5);
+        bag.removeItem(1);
+        list.removeItem(1);
+        System.out.println("ValueBag: " + bag + " , LLList: " + list + ", Match? " + bag.toString().equals(list.toString()));
+        String iterated = "";
+        ListIterator iter = bag.iterator();
+        while (iter.hasNext()) {
+            iterated = iterated + iter.next();
+        }
+        System.out.println("iterator: " + iterated + " , Expected : debaf, Match? " + iterated.equals("debaf"));
+        
+        int keys = 1000000;
+        System.out.println();
+        System.out.println("--- Memory: " + keys + " keys with one value each ---");
+        Object value = "value";
+        Object[] holders = new Object[keys];
+        long before = usedHeap();
+        for (int i = 0; i < keys; i++) {
+            LLList l = new LLList();
+            l.addItem(value, 0);
+            holders[i] = l;
+        }
+        long llBytes = usedHeap() - before;
+        Arrays.fill(holders, null);
+        before = usedHeap();
+        for (int i = 0; i < keys; i++) {
+            holders[i] = new ValueBag(value);
+        }
+        long bagBytes = usedHeap() - before;
+        System.out.println("LLList: " + (llBytes / keys) + " bytes/key, ValueBag: " + (bagBytes / keys) + " bytes/key");
+        Arrays.fill(holders, null);
+        
+        int hotKeys = 1000;
+        int values = 5000;
+        System.out.println();
+        System.out.println("--- Memory and iteration: " + hotKeys + " keys with " + values + " values each ---");
+        before = usedHeap();
+        for (int i = 0; i < hotKeys; i++) {
+            LLList l = new LLList();
+            for (int j = 0; j < values; j++) {
+                l.addItem(value, 0);
+            }
+            holders[i] = l;
+        }
+        long llHotBytes = usedHeap() - before;
+        long start = System.nanoTime();
+        int seen = 0;
+        for (int i = 0; i < hotKeys; i++) {
+            ListIterator it = ((List) holders[i]).iterator();
+            while (it.hasNext()) {
+                if (it.next() != null) {
+                    seen++;
+                }
+            }
+        }
+        long llNanos = System.nanoTime() - start;
+        Arrays.fill(holders, null);
+        
+        before = usedHeap();
+        for (int i = 0; i < hotKeys; i++) {
+            ValueBag b = new ValueBag(value);
+            for (int j = 1; j < values; j++) {
+                b.addItem(value, 0);
+            }
+            holders[i] = b;
+        }
+        long bagHotBytes = usedHeap() - before;
+        start = System.nanoTime();
+        for (int i = 0; i < hotKeys; i++) {
+            ListIterator it = ((List) holders[i]).iterator();
+            while (it.hasNext()) {
+                if (it.next() != null) {
+                    seen++;
+                }
+            }
+        }
+        long bagNanos = System.nanoTime() - start;
+        
+        System.out.println("LLList: " + (llHotBytes / ((long) hotKeys * values)) + " bytes/value, iteration " + (llNanos / 1000000) + " ms");
+        System.out.println("ValueBag: " + (bagHotBytes / ((long) hotKeys * values)) + " bytes/value, iteration " + (bagNanos / 1000000) + " ms");
+        System.out.println("(values seen: " + seen + ")");
+    }
+}